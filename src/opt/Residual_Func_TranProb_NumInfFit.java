@@ -103,6 +103,8 @@ public class Residual_Func_TranProb_NumInfFit extends AbstractResidualFunc {
             }
 
             runnable[r].setPrintPrevalenceAtFreq(-1);
+            // Only transmission is fitted, which is not used in burn-in as infection is introduced afterward
+            runnable[r].setBurnInCacheIgnoredFields(new int[]{MSMPopulation.FIELDS_TRANSMIT, MSMPopulation.FIELDS_SUSCEPT});
             runnable[r].setProgressSupport(new PropertyChangeSupport(runnable[r])); // Null response
 
             String[] model_init_val = Arrays.copyOf(defaultModelInit, defaultModelInit.length);
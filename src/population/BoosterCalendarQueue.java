@@ -0,0 +1,247 @@
+package population;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calendar queue of scheduled vaccine booster, as buckets of (person id, population slot)
+ * by day, without boxing.
+ *
+ * <p>
+ * Buckets are indexed by day modulo number of buckets, which is doubled whenever
+ * a new day cannot fit in. Entries within a day are kept in the order they are
+ * scheduled.</p>
+ *
+ * <p>
+ * Days are expected to be polled in increasing order. Entries scheduled for a day on or
+ * before the last day polled are never returned by poll (as with the HashMap schedule
+ * of previous version, where such entries stay in the map), and are discarded once their
+ * bucket is needed by a later day. They are counted in getNumScheduled until then.</p>
+ */
+public class BoosterCalendarQueue implements Serializable {
+
+    private static final long serialVersionUID = -8208263312577812307L;
+
+    private static final int DAY_NONE = Integer.MIN_VALUE;
+
+    private transient int[] bucketDay;
+    private transient int[][] bucketId;
+    private transient int[][] bucketSlot;
+    private transient int[] bucketSize;
+    private transient int numScheduled;
+    private transient int lastPolledDay;
+
+    // Entries of the last poll
+    private transient int[] polledId;
+    private transient int[] polledSlot;
+
+    public BoosterCalendarQueue() {
+        init(64);
+    }
+
+    private void init(int numBucket) {
+        bucketDay = new int[numBucket];
+        Arrays.fill(bucketDay, DAY_NONE);
+        bucketId = new int[numBucket][];
+        bucketSlot = new int[numBucket][];
+        bucketSize = new int[numBucket];
+        numScheduled = 0;
+        lastPolledDay = DAY_NONE;
+        polledId = new int[0];
+        polledSlot = new int[0];
+    }
+
+    /**
+     * Convert booster schedule from format used in previous version
+     *
+     * @param schedule HashMap of day to list of person id
+     * @return calendar queue with the same schedule, with unknown population slot (-1)
+     */
+    public static BoosterCalendarQueue fromScheduleMap(HashMap<Integer, ArrayList<Integer>> schedule) {
+        BoosterCalendarQueue queue = new BoosterCalendarQueue();
+        Integer[] days = schedule.keySet().toArray(new Integer[schedule.size()]);
+        Arrays.sort(days);
+        for (Integer day : days) {
+            for (Integer id : schedule.get(day)) {
+                queue.schedule(day, id, -1);
+            }
+        }
+        return queue;
+    }
+
+    public int getNumScheduled() {
+        return numScheduled;
+    }
+
+    /**
+     * Schedule a booster. Entries for a day on or before the last day polled are never polled.
+     *
+     * @param day day of booster
+     * @param id person id
+     * @param slot population slot of person, or -1 if unknown
+     */
+    public void schedule(int day, int id, int slot) {
+        int b = day & (bucketDay.length - 1);
+        if (bucketDay[b] != day && bucketSize[b] > 0) {
+            if (bucketDay[b] <= lastPolledDay && lastPolledDay != DAY_NONE) {
+                // Past day that will never be polled, so its entries are discarded
+                numScheduled -= bucketSize[b];
+                bucketSize[b] = 0;
+            } else {
+                grow();
+                schedule(day, id, slot);
+                return;
+            }
+        }
+        if (bucketSize[b] == 0) {
+            bucketDay[b] = day;
+            if (bucketId[b] == null) {
+                bucketId[b] = new int[4];
+                bucketSlot[b] = new int[4];
+            }
+        }
+        if (bucketSize[b] == bucketId[b].length) {
+            bucketId[b] = Arrays.copyOf(bucketId[b], bucketSize[b] * 2);
+            bucketSlot[b] = Arrays.copyOf(bucketSlot[b], bucketSize[b] * 2);
+        }
+        bucketId[b][bucketSize[b]] = id;
+        bucketSlot[b][bucketSize[b]] = slot;
+        bucketSize[b]++;
+        numScheduled++;
+    }
+
+    private void grow() {
+        int[] oldDay = bucketDay;
+        int[][] oldId = bucketId;
+        int[][] oldSlot = bucketSlot;
+        int[] oldSize = bucketSize;
+        int oldLastPolledDay = lastPolledDay;
+        int[] oldPolledId = polledId;
+        int[] oldPolledSlot = polledSlot;
+
+        init(oldDay.length * 2);
+        lastPolledDay = oldLastPolledDay;
+        polledId = oldPolledId;
+        polledSlot = oldPolledSlot;
+
+        for (int ob = 0; ob < oldDay.length; ob++) {
+            if (oldSize[ob] > 0) {
+                int b = oldDay[ob] & (bucketDay.length - 1);
+                bucketDay[b] = oldDay[ob];
+                bucketId[b] = oldId[ob];
+                bucketSlot[b] = oldSlot[ob];
+                bucketSize[b] = oldSize[ob];
+                numScheduled += oldSize[ob];
+            }
+        }
+    }
+
+    /**
+     * Remove all boosters scheduled at a day. Entries removed are available
+     * through getPolledId and getPolledSlot until the next poll.
+     *
+     * @param day day of booster
+     * @return number of entries removed
+     */
+    public int poll(int day) {
+        lastPolledDay = day;
+        int b = day & (bucketDay.length - 1);
+        if (bucketSize[b] == 0 || bucketDay[b] != day) {
+            return 0;
+        }
+        int num = bucketSize[b];
+
+        // Swap bucket arrays with poll buffer
+        int[] id = bucketId[b];
+        int[] slot = bucketSlot[b];
+        bucketId[b] = polledId.length > 0 ? polledId : null;
+        bucketSlot[b] = polledSlot.length > 0 ? polledSlot : null;
+        polledId = id;
+        polledSlot = slot;
+
+        bucketSize[b] = 0;
+        bucketDay[b] = DAY_NONE;
+        numScheduled -= num;
+        return num;
+    }
+
+    public int getPolledId(int i) {
+        return polledId[i];
+    }
+
+    public int getPolledSlot(int i) {
+        return polledSlot[i];
+    }
+
+    /**
+     * @return schedule in format used in previous version, e.g. for reporting
+     */
+    public HashMap<Integer, ArrayList<Integer>> toScheduleMap() {
+        HashMap<Integer, ArrayList<Integer>> res = new HashMap<>();
+        for (int b = 0; b < bucketDay.length; b++) {
+            if (bucketSize[b] > 0) {
+                ArrayList<Integer> ent = new ArrayList<>(bucketSize[b]);
+                for (int i = 0; i < bucketSize[b]; i++) {
+                    ent.add(bucketId[b][i]);
+                }
+                res.put(bucketDay[b], ent);
+            }
+        }
+        return res;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int numDay = 0;
+        for (int b = 0; b < bucketDay.length; b++) {
+            if (bucketSize[b] > 0) {
+                numDay++;
+            }
+        }
+        out.writeInt(bucketDay.length);
+        out.writeInt(lastPolledDay);
+        out.writeInt(numDay);
+        for (int b = 0; b < bucketDay.length; b++) {
+            if (bucketSize[b] > 0) {
+                out.writeInt(bucketDay[b]);
+                out.writeInt(bucketSize[b]);
+                for (int i = 0; i < bucketSize[b]; i++) {
+                    out.writeInt(bucketId[b][i]);
+                    out.writeInt(bucketSlot[b][i]);
+                }
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init(in.readInt());
+        int numDay;
+        lastPolledDay = in.readInt();
+        numDay = in.readInt();
+        for (int d = 0; d < numDay; d++) {
+            int day = in.readInt();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                int id = in.readInt();
+                schedule(day, id, in.readInt());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (Map.Entry<Integer, ArrayList<Integer>> ent : new java.util.TreeMap<>(toScheduleMap()).entrySet()) {
+            str.append(ent.getKey()).append('=').append(ent.getValue()).append('\n');
+        }
+        return str.toString();
+    }
+
+}
@@ -0,0 +1,66 @@
+package population;
+
+import java.util.Arrays;
+import population.person.RelationshipPerson_MSM;
+
+/**
+ * Timing wheel for the expiry of casual records of RelationshipPerson_MSM,
+ * so that only persons with a record expiring on a given day are visited.
+ *
+ * <p>
+ * Each bucket holds the persons with a record expiring on days equal to the bucket
+ * index modulo number of buckets. Records are expected to expire no more than
+ * number of buckets days after they are added.</p>
+ */
+public class CasualRecordTimingWheel {
+
+    private final RelationshipPerson_MSM[][] bucketPerson;
+    private final int[][] bucketDay;
+    private final int[] bucketSize;
+
+    public CasualRecordTimingWheel(int numBucket) {
+        bucketPerson = new RelationshipPerson_MSM[numBucket][4];
+        bucketDay = new int[numBucket][4];
+        bucketSize = new int[numBucket];
+    }
+
+    public void add(RelationshipPerson_MSM person, int expiryDay) {
+        int b = expiryDay % bucketSize.length;
+        if (bucketSize[b] == bucketPerson[b].length) {
+            bucketPerson[b] = Arrays.copyOf(bucketPerson[b], bucketSize[b] * 2);
+            bucketDay[b] = Arrays.copyOf(bucketDay[b], bucketSize[b] * 2);
+        }
+        bucketPerson[b][bucketSize[b]] = person;
+        bucketDay[b][bucketSize[b]] = expiryDay;
+        bucketSize[b]++;
+    }
+
+    /**
+     * Expire all casual records due on a day.
+     *
+     * @param day day of expiry
+     * @return number of records expired
+     */
+    public int expire(int day) {
+        int b = day % bucketSize.length;
+        RelationshipPerson_MSM[] persons = bucketPerson[b];
+        int[] days = bucketDay[b];
+        int numRemain = 0;
+        int numExpired = 0;
+
+        for (int i = 0; i < bucketSize[b]; i++) {
+            if (days[i] == day) {
+                persons[i].expireCasualRecord();
+                numExpired++;
+            } else {
+                persons[numRemain] = persons[i];
+                days[numRemain] = days[i];
+                numRemain++;
+            }
+        }
+        Arrays.fill(persons, numRemain, bucketSize[b], null);
+        bucketSize[b] = numRemain;
+        return numExpired;
+    }
+
+}
@@ -0,0 +1,235 @@
+package population;
+
+import random.RandomGenerator;
+
+/**
+ * Counter-based random number generator (Philox4x32-10), where each draw is a
+ * function of the seed and a counter of four 32-bit words, e.g. (day, key A, key B, purpose).
+ *
+ * <p>
+ * Unlike MersenneTwisterRandomGenerator, a draw does not depend on how many draws
+ * were made before it, so that results can be reproduced regardless of the order
+ * (or thread) in which persons or relationships are processed.</p>
+ *
+ * <p>
+ * It can be used directly through the keyed methods (e.g. nextDouble(int, int, int, int)),
+ * which are thread safe, or as a RandomGenerator stream positioned by setStream, where
+ * successive draws use successive counters. Stream usage is not thread safe.</p>
+ */
+public class CounterBasedRandomGenerator implements RandomGenerator {
+
+    private static final long serialVersionUID = 5402986107745716326L;
+
+    private static final long PHILOX_M0 = 0xD2511F53L;
+    private static final long PHILOX_M1 = 0xCD9E8D57L;
+    private static final int PHILOX_W0 = 0x9E3779B9;
+    private static final int PHILOX_W1 = 0xBB67AE85;
+    private static final int PHILOX_ROUNDS = 10;
+
+    private int key0;
+    private int key1;
+
+    // Stream state
+    private int stream0, stream1, stream2, streamIndex;
+    private final int[] block = new int[4];
+    private int blockPt = block.length;
+    private double nextGaussian = Double.NaN;
+
+    public CounterBasedRandomGenerator(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Philox4x32-10 block function.
+     *
+     * @param c0 counter word 0
+     * @param c1 counter word 1
+     * @param c2 counter word 2
+     * @param c3 counter word 3
+     * @param out array of length at least 4 for output
+     */
+    public void generateBlock(int c0, int c1, int c2, int c3, int[] out) {
+        int k0 = key0;
+        int k1 = key1;
+        for (int r = 0; r < PHILOX_ROUNDS; r++) {
+            long p0 = PHILOX_M0 * (c0 & 0xFFFFFFFFL);
+            long p1 = PHILOX_M1 * (c2 & 0xFFFFFFFFL);
+            int n0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            int n1 = (int) p1;
+            int n2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+            int n3 = (int) p0;
+            c0 = n0;
+            c1 = n1;
+            c2 = n2;
+            c3 = n3;
+            k0 += PHILOX_W0;
+            k1 += PHILOX_W1;
+        }
+        out[0] = c0;
+        out[1] = c1;
+        out[2] = c2;
+        out[3] = c3;
+    }
+
+    /**
+     * As generateBlock, but only the first two output words are returned (word 0 in the
+     * high 32 bits), so that keyed draws need no output array.
+     */
+    private long generateFirstWords(int c0, int c1, int c2, int c3) {
+        int k0 = key0;
+        int k1 = key1;
+        for (int r = 0; r < PHILOX_ROUNDS; r++) {
+            long p0 = PHILOX_M0 * (c0 & 0xFFFFFFFFL);
+            long p1 = PHILOX_M1 * (c2 & 0xFFFFFFFFL);
+            int n0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            int n1 = (int) p1;
+            int n2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+            int n3 = (int) p0;
+            c0 = n0;
+            c1 = n1;
+            c2 = n2;
+            c3 = n3;
+            k0 += PHILOX_W0;
+            k1 += PHILOX_W1;
+        }
+        return ((long) c0 << 32) | (c1 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return uniform double in [0, 1) for the given counter
+     */
+    public double nextDouble(int c0, int c1, int c2, int c3) {
+        long words = generateFirstWords(c0, c1, c2, c3);
+        return toDouble((int) (words >>> 32), (int) words);
+    }
+
+    /**
+     * @return uniform float in [0, 1) for the given counter
+     */
+    public float nextFloat(int c0, int c1, int c2, int c3) {
+        return toFloat((int) (generateFirstWords(c0, c1, c2, c3) >>> 32));
+    }
+
+    private static double toDouble(int w0, int w1) {
+        return (((long) (w0 >>> 5) << 26) | (w1 >>> 6)) * 0x1.0p-53;
+    }
+
+    private static float toFloat(int w0) {
+        return (w0 >>> 8) * 0x1.0p-24f;
+    }
+
+    /**
+     * Position stream, so that subsequent draws through the RandomGenerator methods
+     * use counters (c0, c1, c2, 0), (c0, c1, c2, 1) and so on.
+     */
+    public void setStream(int c0, int c1, int c2) {
+        stream0 = c0;
+        stream1 = c1;
+        stream2 = c2;
+        streamIndex = 0;
+        blockPt = block.length;
+        nextGaussian = Double.NaN;
+    }
+
+    private int nextWord() {
+        if (blockPt == block.length) {
+            generateBlock(stream0, stream1, stream2, streamIndex, block);
+            streamIndex++;
+            blockPt = 0;
+        }
+        return block[blockPt++];
+    }
+
+    @Override
+    public final void setSeed(int seed) {
+        setSeed((long) seed);
+    }
+
+    @Override
+    public final void setSeed(int[] seed) {
+        long s = 0;
+        for (int v : seed) {
+            s = s * 31 + v;
+        }
+        setSeed(s);
+    }
+
+    @Override
+    public final void setSeed(long seed) {
+        key0 = (int) seed;
+        key1 = (int) (seed >>> 32);
+        setStream(0, 0, 0);
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        int i = 0;
+        while (i < bytes.length) {
+            int w = nextWord();
+            for (int b = 0; b < 4 && i < bytes.length; b++) {
+                bytes[i++] = (byte) w;
+                w >>>= 8;
+            }
+        }
+    }
+
+    @Override
+    public int nextInt() {
+        return nextWord();
+    }
+
+    @Override
+    public int nextInt(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        // Rejection as in java.util.Random
+        int bits, val;
+        do {
+            bits = nextWord() >>> 1;
+            val = bits % n;
+        } while (bits - val + (n - 1) < 0);
+        return val;
+    }
+
+    @Override
+    public long nextLong() {
+        return ((long) nextWord() << 32) | (nextWord() & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextWord() < 0;
+    }
+
+    @Override
+    public float nextFloat() {
+        return toFloat(nextWord());
+    }
+
+    @Override
+    public double nextDouble() {
+        int w0 = nextWord();
+        return toDouble(w0, nextWord());
+    }
+
+    @Override
+    public double nextGaussian() {
+        if (!Double.isNaN(nextGaussian)) {
+            double res = nextGaussian;
+            nextGaussian = Double.NaN;
+            return res;
+        }
+        // Polar method
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        return v1 * multiplier;
+    }
+
+}
@@ -0,0 +1,74 @@
+package population;
+
+import java.util.Arrays;
+import population.person.RelationshipPerson_MSM;
+
+/**
+ * Buffers of MSMPopulation performAct, reused across calls.
+ */
+class MSMActBuffer {
+
+    // hasUnprotectedSex[actType]{occured, from_person_1, from_person_2}
+    boolean[][] res = new boolean[0][];
+    int[][] infectStat = new int[0][];
+    int[][] strainStat = new int[0][];
+    double[][] vaccineImpact = new double[0][];
+    RelationshipPerson_MSM[] person = new RelationshipPerson_MSM[0];
+    // Copy of acts occurred today, for acts scheduled by population
+    boolean[] hasActed = new boolean[0];
+    // Incidence by site, if acts are processed in batch with one buffer per chunk
+    final int[] incidence = new int[3];
+
+    /**
+     * Clear result for a new act, resizing buffers if needed.
+     *
+     * @param numActType number of act types
+     * @param numLinks number of persons in relationship
+     * @return cleared result
+     */
+    boolean[][] reset(int numActType, int numLinks) {
+        if (res.length != numActType) {
+            res = new boolean[numActType][3];
+        }
+        if (person.length != numLinks) {
+            person = new RelationshipPerson_MSM[numLinks];
+            infectStat = new int[numLinks][];
+            strainStat = new int[numLinks][];
+            vaccineImpact = new double[numLinks][];
+        }
+        for (boolean[] r : res) {
+            Arrays.fill(r, false);
+        }
+        return res;
+    }
+
+    /**
+     * @param src acts occurred today from RegCasRelationship, which is not modified
+     * @return copy of src in buffer
+     */
+    boolean[] copyHasActed(boolean[] src) {
+        setHasActedLength(src.length);
+        System.arraycopy(src, 0, hasActed, 0, src.length);
+        return hasActed;
+    }
+
+    /**
+     * @param numActType number of act types
+     * @param actMask acts occurred today, as bit (1 &lt;&lt; act)
+     * @return acts occurred today in buffer
+     */
+    boolean[] setHasActed(int numActType, int actMask) {
+        setHasActedLength(numActType);
+        for (int a = 0; a < numActType; a++) {
+            hasActed[a] = (actMask & (1 << a)) != 0;
+        }
+        return hasActed;
+    }
+
+    private void setHasActedLength(int numActType) {
+        if (hasActed.length != numActType) {
+            hasActed = new boolean[numActType];
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package population;
+
+import java.util.Arrays;
+
+/**
+ * Per chunk results of the part of MSMPopulation person loop that runs in parallel
+ * (casual partnership stat, candidate collection and snapshot count), kept separately
+ * so that chunks can be merged afterwards in slot order.
+ */
+class MSMPersonLoopChunk {
+
+    // Range of population slot, from (inclusive) to (exclusive)
+    int from;
+    int to;
+
+    // Global casual limit
+    int[] casualStat = new int[0];
+    int casualTotal;
+    int[][] candidateSlot = new int[0][];
+    int[] numCandidate = new int[0];
+
+    // Snapshot count
+    int[] numInf = new int[0];
+    int[][] snapshotCount = new int[0][];
+
+    /**
+     * Set range and clear counts for a new time step, reusing buffers if possible.
+     *
+     * @param from first slot
+     * @param to last slot (exclusive)
+     * @param numCasualGroup number of casual partnership group (i.e. length of CASUAL_PARTNER_PROB)
+     * @param numInfLength length of number infected count
+     * @param snapshotCountShape snapshot count of population, for the length of each count
+     */
+    void reset(int from, int to, int numCasualGroup, int numInfLength, int[][] snapshotCountShape) {
+        this.from = from;
+        this.to = to;
+
+        if (casualStat.length != numCasualGroup) {
+            casualStat = new int[numCasualGroup];
+            candidateSlot = new int[numCasualGroup][16];
+            numCandidate = new int[numCasualGroup];
+        } else {
+            Arrays.fill(casualStat, 0);
+            Arrays.fill(numCandidate, 0);
+        }
+        casualTotal = 0;
+
+        if (numInf.length != numInfLength) {
+            numInf = new int[numInfLength];
+        } else {
+            Arrays.fill(numInf, 0);
+        }
+
+        int numSnapshot = snapshotCountShape == null ? 0 : snapshotCountShape.length;
+        if (snapshotCount.length != numSnapshot) {
+            snapshotCount = new int[numSnapshot][];
+        }
+        for (int i = 0; i < numSnapshot; i++) {
+            if (snapshotCountShape[i] == null) {
+                snapshotCount[i] = null;
+            } else if (snapshotCount[i] == null || snapshotCount[i].length != snapshotCountShape[i].length) {
+                snapshotCount[i] = new int[snapshotCountShape[i].length];
+            } else {
+                Arrays.fill(snapshotCount[i], 0);
+            }
+        }
+    }
+
+    void addCandidate(int group, int slot) {
+        if (numCandidate[group] == candidateSlot[group].length) {
+            candidateSlot[group] = Arrays.copyOf(candidateSlot[group], numCandidate[group] * 2);
+        }
+        candidateSlot[group][numCandidate[group]] = slot;
+        numCandidate[group]++;
+    }
+
+}
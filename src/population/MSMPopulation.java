@@ -6,7 +6,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.commons.math3.distribution.AbstractRealDistribution;
 import org.apache.commons.math3.distribution.ExponentialDistribution;
@@ -21,7 +22,10 @@ import person.AbstractIndividualInterface;
 import population.availability.MSMAvailablity;
 import population.person.MultiSiteMultiStrainPersonInterface;
 import population.person.RelationshipPerson_MSM;
+import population.person.RelationshipPerson_MSM_ColumnStore;
 import population.relationshipMap.RegCasRelationship;
+import population.relationshipMap.RegCasRelationship_MSM;
+import population.relationshipMap.RelationshipMap_MSM;
 import random.MersenneTwisterRandomGenerator;
 import relationship.RelationshipMap;
 import relationship.SingleRelationship;
@@ -99,6 +103,48 @@ import util.StaticMethods;
  * <p>
  * 20190620 - Add support for adjusting population size.
  * </p>
+ * <p>
+ * 20261017 - Add optional column store for person parameters (MSM_USE_PERSON_COLUMN_STORE).
+ * </p>
+ * <p>
+ * 20261017 - Expiry of casual record by population level timing wheel.
+ * </p>
+ * <p>
+ * 20261017 - Booster schedule as calendar queue (BoosterCalendarQueue).
+ * </p>
+ * <p>
+ * 20261017 - Id to population slot index, and relationships with slot of partners (RegCasRelationship_MSM).
+ * </p>
+ * <p>
+ * 20261017 - Reuse buffers of aged out person for their replacement (see recycleAgedOutPerson).
+ * </p>
+ * <p>
+ * 20261017 - Add optional primitive adjacency index for relationship maps (MSM_USE_RELATIONSHIP_MAP_INDEX).
+ * </p>
+ * <p>
+ * 20261017 - Reusable candidate buckets and prefix sums for global casual limit.
+ * </p>
+ * <p>
+ * 20261017 - Add optional counter-based RNG for draws in performAct (MSM_USE_COUNTER_BASED_RNG).
+ * </p>
+ * <p>
+ * 20261017 - Add optional parallel person loop (MSM_PERSON_LOOP_NUM_THREAD).
+ * </p>
+ * <p>
+ * 20261017 - Snapshot count by StrainClassifier from a single read of strain array.
+ * </p>
+ * <p>
+ * 20261017 - Behaviour only path in performAct if neither partner is infectious.
+ * </p>
+ * <p>
+ * 20261017 - Reusable performAct buffers and daily cache of vaccine impact by slot.
+ * </p>
+ * <p>
+ * 20261017 - Add optional act schedule by days until next act (MSM_USE_ACT_SCHEDULE).
+ * </p>
+ * <p>
+ * 20261017 - Add optional parallel acts in conflict-free relationship batches (MSM_ACT_NUM_THREAD).
+ * </p>
  */
 public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
@@ -150,7 +196,13 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
     public static final int MSM_SITE_SPECIFIC_VACCINATION = MSM_USE_GLOBAL_CASUAL_LIMIT + 1;
     public static final int MSM_SITE_CURRENTLY_VACCINATED = MSM_SITE_SPECIFIC_VACCINATION + 1;
     public static final int MSM_SITE_VACC_BOOSTER_SCHEDULE = MSM_SITE_CURRENTLY_VACCINATED + 1;
-    public static final int LENGTH_FIELDS_MSM_POP = MSM_SITE_VACC_BOOSTER_SCHEDULE + 1;
+    public static final int MSM_USE_PERSON_COLUMN_STORE = MSM_SITE_VACC_BOOSTER_SCHEDULE + 1;
+    public static final int MSM_USE_RELATIONSHIP_MAP_INDEX = MSM_USE_PERSON_COLUMN_STORE + 1;
+    public static final int MSM_USE_COUNTER_BASED_RNG = MSM_USE_RELATIONSHIP_MAP_INDEX + 1;
+    public static final int MSM_PERSON_LOOP_NUM_THREAD = MSM_USE_COUNTER_BASED_RNG + 1;
+    public static final int MSM_USE_ACT_SCHEDULE = MSM_PERSON_LOOP_NUM_THREAD + 1;
+    public static final int MSM_ACT_NUM_THREAD = MSM_USE_ACT_SCHEDULE + 1;
+    public static final int LENGTH_FIELDS_MSM_POP = MSM_ACT_NUM_THREAD + 1;
 
     public final Object[] DEFAULT_MSM_FIELDS = {
         // Min/max for anal and oral sex for reg (per day) and causal relationship (per partnership), from 
@@ -224,8 +276,36 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
         // HashMap<Integer, int[]> currentlyVaccinated of ID, VACC_SETTING if applied
         new HashMap<Integer, int[]>(),
         // MSM_SITE_VACC_BOOSTER_SCHEDULE
-        // HashMap<Integer, ArrayList<Integer>> global_time, list of id who receive booseter 
-        new HashMap<Integer, ArrayList<Integer>>(),};
+        // BoosterCalendarQueue of global_time, id (and slot) who receive booster
+        // (HashMap<Integer, ArrayList<Integer>> in previous version, converted on use)
+        new BoosterCalendarQueue(),
+        // MSM_USE_PERSON_COLUMN_STORE
+        // If true, person parameters are stored by column (see RelationshipPerson_MSM_ColumnStore)
+        false,
+        // MSM_USE_RELATIONSHIP_MAP_INDEX
+        // If true, relationship maps are RelationshipMap_MSM with primitive adjacency index
+        false,
+        // MSM_USE_COUNTER_BASED_RNG
+        // If true, draws in performAct are keyed by (day, partners, purpose) through CounterBasedRandomGenerator,
+        // instead of sequential draws from population and infection RNG
+        false,
+        // MSM_PERSON_LOOP_NUM_THREAD
+        // If > 1, availability update, casual partnership stat and snapshot count of person loop
+        // are processed in parallel chunks, and merged in slot order afterwards.
+        // incrementPersonStat, age out and screening stay sequential, as they draw from RNG in slot order.
+        // Only used with MSM_USE_RELATIONSHIP_MAP_INDEX, as degree queries of RelationshipMap are not thread safe.
+        // Snapshot classifiers must be thread safe if used.
+        1,
+        // MSM_USE_ACT_SCHEDULE
+        // If true, acts with a per day probability (i.e. act frequency < 1) are scheduled by
+        // days until next act, drawn when relationship is formed and after each act (see nextActInDays),
+        // instead of a daily draw by RegCasRelationship. Same expected number of acts, but different RNG usage.
+        false,
+        // MSM_ACT_NUM_THREAD
+        // If > 0, acts of relationships with all acts scheduled by MSM_USE_ACT_SCHEDULE are processed
+        // in conflict-free batches with this number of threads at first performAct of the day (see performActsInBatch).
+        // Only used with MSM_USE_ACT_SCHEDULE and MSM_USE_COUNTER_BASED_RNG, as draws must not depend on order.
+        0,};
 
     public static final int[] AGE_RANGE = {(int) (16 * AbstractRegCasRelMapPopulation.ONE_YEAR_INT),
         (int) (80 * AbstractRegCasRelMapPopulation.ONE_YEAR_INT)
@@ -238,6 +318,22 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
     // Global casual limit    
     private transient float[] CASUAL_PARTNER_PROB;
+    // casualCandidateSlot[number of casual partners] = slot of candidates, reused across steps
+    private transient int[][] casualCandidateSlot = null;
+    private transient int[] casualChangeSlot = null;
+
+    // Expiry of casual records, rebuilt from persons if needed
+    private transient CasualRecordTimingWheel casualRecordWheel = null;
+    private transient boolean populationSlotAssigned = false;
+    // Persons aged out in current time step, reused across steps
+    private transient RelationshipPerson_MSM[] agedOut = null;
+    private transient int[] agedOutSlot = null;
+    private transient int numAgedOut = 0;
+    // slotById[id] = slot of person in getPop(), or -1 if not in population
+    private transient int[] slotById = null;
+
+    // Person column store, if used. Shared with (and exported through) the persons themselves
+    private transient RelationshipPerson_MSM_ColumnStore personColumnStore = null;
 
     // Screening (General)
     private transient int[] screeningPersonByIndex = null; // Length of total screened
@@ -250,6 +346,55 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
     public static final int VACC_SETTING_AGE_EXPIRY = 0;
     public static final int VACC_SETTING_LENGTH = VACC_SETTING_AGE_EXPIRY + 1;
 
+    // Vaccination state by population slot, with MSM_SITE_CURRENTLY_VACCINATED kept as
+    // the exported view of it. Rebuilt if the HashMap is replaced (e.g. imported population)
+    private static final int VACC_NOT_VACCINATED = Integer.MIN_VALUE;
+    private transient int[] vaccExpiryAgeBySlot = null;
+    private transient HashMap<Integer, int[]> vaccinatedBySlotSource = null;
+    // Vaccine impact by population slot, cached for the day (global time) in vaccineImpactDay
+    private static final int VACC_IMPACT_NOT_CACHED = Integer.MIN_VALUE;
+    private transient double[][] vaccineImpactBySlot = null;
+    private transient int[] vaccineImpactDay = null;
+    private transient AbstractVaccination vaccineImpactSource = null;
+
+    // Buffers of performAct, reused across calls
+    private transient MSMActBuffer actBuffer = null;
+    // Counter-based RNG, if used
+    private static final int RNG_PURPOSE_CONDOM = 1;
+    private static final int RNG_PURPOSE_TRANSMISSION = 2;
+    private static final int RNG_PURPOSE_ACT_SCHEDULE = 3;
+    private transient CounterBasedRandomGenerator counterBasedRNG = null;
+
+    // Parallel acts, if used
+    private static final int ACT_BATCH_MIN_CHUNK_SIZE = 256;
+    private transient boolean actBatchDone = false;
+    private transient int actBatchDay = 0;
+    private transient int numActBatchUnclaimed = 0;
+    private transient boolean actBatchSettingReported = false;
+    // Relationships with act today in batch, with their acts (as bit of act) and colour
+    private transient RegCasRelationship_MSM[] actBatchRel = null;
+    private transient int[] actBatchMask = null;
+    private transient int[] actBatchColour = null;
+    private transient int[] actBatchOrder = null;
+    private transient int[] actBatchColourStart = null;
+    private transient int[] actColourBySlot = null;
+    private transient MSMActBuffer[] actBatchBuffer = null;
+
+    // Parallel person loop, if used
+    private static final int AVAIL_REG_ADD = 1;
+    private static final int AVAIL_REG_REMOVE = 1 << 1;
+    private static final int AVAIL_CAS_ADD = 1 << 2;
+    private static final int AVAIL_CAS_REMOVE = 1 << 3;
+    private static final int PERSON_LOOP_MIN_CHUNK_SIZE = 1024;
+    // Pools by parallelism, shared by all populations (e.g. sims run in parallel), so that no pool is left behind by finished populations
+    private static final HashMap<Integer, ForkJoinPool> sharedParallelPool = new HashMap<>();
+    private transient MSMPersonLoopChunk[] personLoopChunk = null;
+    private transient byte[] availabilityUpdateBySlot = null;
+
+    // Snapshot classifier as StrainClassifier (or null if not), rebuilt if snapshot classifiers are replaced
+    private transient PersonClassifier[] strainClassifierSource = null;
+    private transient StrainClassifier[] strainClassifier = null;
+
     private transient AbstractRealDistribution vaccine_duration_dist = null;
     private transient AbstractRealDistribution vaccine_remove_sym_infect_duration = null;
 
@@ -268,11 +413,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                 //int lastScreenAtAge = (int) p.getParameter("PARAM_LAST_SCREEN_AT_AGE");
                 //int numCasualPartnerInLast6Months = (int) p.getParameter("PARAM_NUM_CASUAL_IN_LAST_6_MONTHS");
 
-                int[] casualRec = ((RelationshipPerson_MSM) p).getCasualRecord();
-                int numCasual = 0;
-                for (int i = 0; i < casualRec.length; i++) {
-                    numCasual += (casualRec[i] != 0) ? 1 : 0;
-                }
+                int numCasual = ((RelationshipPerson_MSM) p).getNumCasualInRecord();
 
                 return (numCasual >= 10) ? 0 : -1;
 
@@ -311,14 +452,61 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
         Object[] importFields = (Object[]) objStr.readObject();
         Long seed = (Long) importFields[MSMPopulation.FIELDS_SEED];
         MSMPopulation newPop = new MSMPopulation(seed);
+        if (importFields.length < newPop.getFields().length) {
+            // Exported from older version - use default for the rest
+            Object[] fullFields = Arrays.copyOf(newPop.getFields(), newPop.getFields().length);
+            System.arraycopy(importFields, 0, fullFields, 0, importFields.length);
+            importFields = fullFields;
+        }
         newPop.setFields(importFields);
         return newPop;
     }
 
+    /**
+     * Drop transient state derived from the current population (e.g. population slots, casual
+     * record wheel, column store and screening schedule), so that it is rebuilt as for an imported
+     * population. Required if fields are replaced after initialise, e.g. when a burned-in
+     * population is restored from cache.
+     */
+    public void resetTransientCaches() {
+        CASUAL_PARTNER_PROB = null;
+        casualRecordWheel = null;
+        populationSlotAssigned = false;
+        slotById = null;
+        numAgedOut = 0;
+        personColumnStore = null;
+        screeningPersonByIndex = null;
+        screeningSite = null;
+        screenTarPt = 0;
+        screenDayPt = 0;
+        screeningToday = null;
+        vaccExpiryAgeBySlot = null;
+        vaccinatedBySlotSource = null;
+        vaccineImpactBySlot = null;
+        vaccineImpactDay = null;
+        vaccineImpactSource = null;
+        counterBasedRNG = null;
+        personLoopChunk = null;
+        availabilityUpdateBySlot = null;
+        strainClassifierSource = null;
+        strainClassifier = null;
+        vaccine_duration_dist = null;
+        vaccine_remove_sym_infect_duration = null;
+    }
+
     public void setTargetedScreenClassifier(PersonClassifier targetedScreenClassifier) {
         this.targetedScreenClassifier = targetedScreenClassifier;
     }
 
+    public RelationshipPerson_MSM_ColumnStore getPersonColumnStore() {
+        if (personColumnStore == null && getPop() != null && getPop().length > 0
+                && getPop()[0] instanceof RelationshipPerson_MSM) {
+            // Imported population
+            personColumnStore = ((RelationshipPerson_MSM) getPop()[0]).getColumnStore();
+        }
+        return personColumnStore;
+    }
+
     public int[] cumulativeIncidencesBySitesCount() {
         return Arrays.copyOf(cumulativeIncidencesBySites, cumulativeIncidencesBySites.length);
     }
@@ -340,26 +528,45 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
         define_CASUAL_PARTNER_PROB(casualPartLimit, casualPartProb);
 
         setPop(new RelationshipPerson_MSM[numInPop]);
-        setRelMap(new RelationshipMap[]{
-            new RelationshipMap(),
-            new RelationshipMap(),});
+        casualRecordWheel = new CasualRecordTimingWheel(RelationshipPerson_MSM.CASUAL_RECORD_DURATION);
+        if (getFields()[MSM_USE_PERSON_COLUMN_STORE] != null
+                && (Boolean) getFields()[MSM_USE_PERSON_COLUMN_STORE]) {
+            personColumnStore = new RelationshipPerson_MSM_ColumnStore(numInPop);
+        }
+        if (getFields()[MSM_USE_RELATIONSHIP_MAP_INDEX] != null
+                && (Boolean) getFields()[MSM_USE_RELATIONSHIP_MAP_INDEX]) {
+            setRelMap(new RelationshipMap[]{
+                new RelationshipMap_MSM(),
+                new RelationshipMap_MSM(),});
+        } else {
+            setRelMap(new RelationshipMap[]{
+                new RelationshipMap(),
+                new RelationshipMap(),});
+        }
         setAvailablity(new AbstractAvailability[]{
             new MSMAvailablity(getRNG()),
             new MSMAvailablity(getRNG()),});
 
         int grpIndex = 0;
+        slotById = null;
+        populationSlotAssigned = true;
 
         for (int p = 0; p < numInPop; p++) {
             RelationshipPerson_MSM person = new RelationshipPerson_MSM(p + 1, true,
                     AGE_RANGE[0] + getRNG().nextInt(AGE_RANGE[1] - AGE_RANGE[0]), 3); // 3 sites
             getPop()[p] = person;
+            setPopulationSlot(person, p);
+            if (personColumnStore != null) {
+                person.attachColumnStore(personColumnStore, p);
+            }
             person.setEnterPopulationAt(getGlobalTime());
+            person.setCasualRecordExpiryByPopulation(true);
 
             while (p >= numByGroupAccum[grpIndex] && (grpIndex + 1) < numByGroupAccum.length) {
                 grpIndex++;
             }
 
-            person.setParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX), grpIndex);
+            person.setIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX, grpIndex);
 
             if (grpIndex != RelationshipPerson_MSM.BEHAV_REG_ONLY) {
                 float pC = getRNG().nextFloat();
@@ -375,11 +582,11 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                 //if(this instanceof HetroPopulation_MSMBehaviour){                    
                 person.setTimeUntilNextRelationship(getRNG().nextInt(1 * 360)); // One offset for sexual debut                  
                 //}
-                person.setParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_MAX_PARTNER), Math.max(numCas, 1));
+                person.setIntParam(RelationshipPerson_MSM.PARAM_MAX_PARTNER, Math.max(numCas, 1));
 
             }
 
-            int behavType = ((Number) person.getParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue();
+            int behavType = person.getIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
 
             if (person.getTimeUntilNextRelationship() < 0) {
                 if (behavType != RelationshipPerson_MSM.BEHAV_CAS_ONLY) { // i.e. can have regular relationship
@@ -422,19 +629,19 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                         }
 
                         for (int actId = 0; actId < actIncluded; actId++) {
-                            String immuneTarSite;
+                            int immuneTarSite;
                             if (isReceptive) {
                                 immuneTarSite = actId == ACT_RIMMING
-                                        ? "PARAM_IMMUNE_ACT_SITE_R" : "PARAM_IMMUNE_ACT_SITE_G";
+                                        ? RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R : RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G;
                             } else {
                                 // Insertive
                                 switch (actId) {
                                     case ACT_ANAL:
                                     case ACT_RIMMING:
-                                        immuneTarSite = "PARAM_IMMUNE_ACT_SITE_A";
+                                        immuneTarSite = RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A;
                                         break;
                                     case ACT_ORAL:
-                                        immuneTarSite = "PARAM_IMMUNE_ACT_SITE_R";
+                                        immuneTarSite = RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R;
                                         break;
                                     default:
                                         throw new UnsupportedOperationException("Insertive/receptive not defined");
@@ -443,9 +650,9 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
                             if ((toActType & (1 << actId)) != 0) {
                                 int immuneAct = 1 << actId;
-                                int currentImmune = (int) person.getParameter(immuneTarSite);
+                                int currentImmune = person.getIntParam(immuneTarSite);
                                 currentImmune += immuneAct;
-                                person.setParameter(immuneTarSite, currentImmune);
+                                person.setIntParam(immuneTarSite, currentImmune);
                             }
                         }
 
@@ -486,7 +693,18 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 	@Override
     public void advanceTimeStep(int deltaT) {
 
+        assignPopulationSlot();
+        syncVaccinationBySlot();
+
+        if (casualRecordWheel == null) {
+            initCasualRecordWheel();
+        }
+
+        int lastGlobalTime = getGlobalTime();
         incrementTime(deltaT);
+        for (int day = lastGlobalTime + 1; day <= getGlobalTime(); day++) {
+            casualRecordWheel.expire(day);
+        }
 
         float[] scrSetting = (float[]) getFields()[MSM_SCREENING_SETTING_GENERAL];
         int[] todayScreenTarget = new int[0];
@@ -512,12 +730,25 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             screenDayPt++;
         }
 
-        HashSet<RelationshipPerson_MSM> toBeRemoved = new HashSet<>();
+        if (agedOut == null) {
+            agedOut = new RelationshipPerson_MSM[16];
+            agedOutSlot = new int[agedOut.length];
+        }
+        numAgedOut = 0;
+
+        int numLoopThread = getFields()[MSM_PERSON_LOOP_NUM_THREAD] == null ? 1
+                : ((Number) getFields()[MSM_PERSON_LOOP_NUM_THREAD]).intValue();
+        // If true, availability update, casual partnership stat and snapshot count
+        // are done after the loop (see personLoopInParallel)
+        boolean deferPersonStep = numLoopThread > 1 && isRelMapIndexed();
 
         // Casual partnership stat 
         boolean useGlobalPopLimit = (Boolean) getFields()[MSM_USE_GLOBAL_CASUAL_LIMIT];
         int[] casualPart_Stat = new int[CASUAL_PARTNER_PROB.length];
-        RelationshipPerson_MSM[][] casualPart_candidateCollection = new RelationshipPerson_MSM[CASUAL_PARTNER_PROB.length][getPop().length];
+        if (useGlobalPopLimit && (casualCandidateSlot == null || casualCandidateSlot.length != CASUAL_PARTNER_PROB.length)) {
+            casualCandidateSlot = new int[CASUAL_PARTNER_PROB.length][16];
+            casualChangeSlot = new int[16];
+        }
         int[] casualPart_candidateCollectionPt = new int[CASUAL_PARTNER_PROB.length];
         int casualPart_Total = 0;
         @SuppressWarnings("unused")
@@ -525,15 +756,29 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
         AbstractVaccination vacc = ((AbstractVaccination) getFields()[MSM_SITE_SPECIFIC_VACCINATION]);
 
+        RelationshipPerson_MSM_ColumnStore columnStore = getPersonColumnStore();
+        int[] behavCol = null;
+        if (columnStore != null) {
+            behavCol = columnStore.getParamColumn(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
+        }
+
         for (int p = 0; p < getPop().length; p++) {
             RelationshipPerson_MSM person = (RelationshipPerson_MSM) getPop()[p];
             incrementPersonStat(person, deltaT);
 
             if (person.getAge() > AGE_RANGE[1]) {
-                toBeRemoved.add(person);
+                if (numAgedOut == agedOut.length) {
+                    agedOut = Arrays.copyOf(agedOut, numAgedOut * 2);
+                    agedOutSlot = Arrays.copyOf(agedOutSlot, numAgedOut * 2);
+                }
+                agedOut[numAgedOut] = person;
+                agedOutSlot[numAgedOut] = p;
+                numAgedOut++;
 
-                for (RelationshipMap relMap : getRelMap()) {
-                    relMap.removeAvailablePerson(person);
+                if (!deferPersonStep) {
+                    for (RelationshipMap relMap : getRelMap()) {
+                        relMap.removeAvailablePerson(person);
+                    }
                 }
 
                 // Remove person from vaccine record
@@ -543,10 +788,14 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                 if (getFields()[MSM_SITE_CURRENTLY_VACCINATED] != null) {
                     ((HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED]).remove(person.getId());
                 }
+                vaccExpiryAgeBySlot[p] = VACC_NOT_VACCINATED;
+                invalidateVaccineImpact(p);
 
                 int nextId = ((Number) getFields()[FIELDS_NEXT_ID]).intValue();
 
-                RelationshipPerson_MSM newP = (RelationshipPerson_MSM) generateNewPerson(nextId, person, AGE_RANGE[0]);
+                RelationshipPerson_MSM newP = recycleAgedOutPerson(nextId, person, AGE_RANGE[0]);
+                setPopulationSlot(person, -1);
+                setPopulationSlot(newP, p);
 
                 getLocalData().put(p, newP);
                 person = newP;
@@ -573,21 +822,21 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
             }
 
-            int behaviour = ((Number) person.getParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue();
+            int behaviour = behavCol != null ? behavCol[p]
+                    : person.getIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
 
-            if (useGlobalPopLimit) {
+            if (useGlobalPopLimit && !deferPersonStep) {
                 if (behaviour != RelationshipPerson_MSM.BEHAV_REG_ONLY) {
-                    int[] casualRec = person.getCasualRecord();
-                    int numCasual = 0;
-                    for (int i = 0; i < casualRec.length; i++) {
-                        numCasual += (casualRec[i] != 0) ? 1 : 0;
-                    }
-
+                    int numCasual = person.getNumCasualInRecord();
                     numCasual = Math.min(numCasual, casualPart_Stat.length - 1);
                     casualPart_Stat[numCasual]++;
 
                     if (person.getTimeUntilNextRelationship() < 0) {
-                        casualPart_candidateCollection[numCasual][casualPart_candidateCollectionPt[numCasual]] = person;
+                        if (casualPart_candidateCollectionPt[numCasual] == casualCandidateSlot[numCasual].length) {
+                            casualCandidateSlot[numCasual] = Arrays.copyOf(casualCandidateSlot[numCasual],
+                                    Math.min(casualPart_candidateCollectionPt[numCasual] * 2, getPop().length));
+                        }
+                        casualCandidateSlot[numCasual][casualPart_candidateCollectionPt[numCasual]] = p;
                         casualPart_candidateCollectionPt[numCasual]++;
                     }
                     casualPart_Total++;
@@ -597,31 +846,8 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
             }
 
-            if (person.getTimeUntilNextRelationship() < 0) {
-
-                if (behaviour != RelationshipPerson_MSM.BEHAV_CAS_ONLY) { // i.e. can have regular partnership                
-                    if (!getRelMap()[MAPPING_REG].containsVertex(person.getId())
-                            || getRelMap()[MAPPING_REG].degreeOf(person.getId()) < 1) {
-
-                        getRelMap()[MAPPING_REG].addAvailablePerson(person);
-                    } else {
-                        getRelMap()[MAPPING_REG].removeAvailablePerson(person);
-                    }
-                }
-                if (!useGlobalPopLimit && behaviour != RelationshipPerson_MSM.BEHAV_REG_ONLY) { // i.e. can have casual 
-                    boolean seekingCasual = person.getParameter(
-                            person.indexToParamName(RelationshipPerson_MSM.PARAM_NUM_CASUAL_IN_LAST_6_MONTHS)).compareTo(
-                            person.getParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_MAX_PARTNER))) < 0;
-
-                    seekingCasual &= !getRelMap()[MAPPING_CAS].containsVertex(person.getId())
-                            || getRelMap()[MAPPING_CAS].degreeOf(person.getId()) < 1;
-
-                    if (seekingCasual) {
-                        getRelMap()[MAPPING_CAS].addAvailablePerson(person);
-                    } else {
-                        getRelMap()[MAPPING_CAS].removeAvailablePerson(person);
-                    }
-                }
+            if (!deferPersonStep) {
+                applyAvailabilityUpdate(person, getAvailabilityUpdate(person, behaviour, useGlobalPopLimit));
             }
 
             boolean screenedToday = false;
@@ -635,7 +861,8 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             if (!screenedToday && getGlobalTime() >= ((float[]) getFields()[MSM_SCREENING_SETTING_TARGETED])[0]) {
 
                 // Rescreening 
-                screenedToday = person.getParameter("PARAM_SCHEDULED_SCREEN_AT_AGE").equals(person.getAge());
+                screenedToday = ((RelationshipPerson_MSM) person).getIntParam(RelationshipPerson_MSM.PARAM_SCHEDULED_SCREEN_AT_AGE)
+                        == (int) person.getAge();
 
                 int screenTypeStartIndex = 3;
 
@@ -689,7 +916,17 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                 }
             }
 
-            snapshotCount(person);
+            if (!deferPersonStep) {
+                snapshotCount(person);
+            }
+        }
+
+        if (deferPersonStep) {
+            if (getSnapshotClassifier() != null) {
+                getStrainClassifier();
+            }
+            casualPart_Total = personLoopInParallel(numLoopThread, useGlobalPopLimit, behavCol,
+                    casualPart_Stat, casualPart_candidateCollectionPt);
         }
 
         if (useGlobalPopLimit) {
@@ -712,43 +949,47 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
             int diff;
 
+            // shortfallBefore[k] = sum of max(target - stat, 0) of group 0 to k - 1
+            int[] shortfallBefore = new int[casualPart_Target.length + 1];
+            for (int k = 0; k < casualPart_Target.length; k++) {
+                shortfallBefore[k + 1] = shortfallBefore[k] + Math.max(casualPart_Target[k] - casualPart_Stat[k], 0);
+            }
+
             //System.out.println(getGlobalTime() + ":" + Arrays.toString(casualPart_Stat));            
             for (int g = 0; g < casualPart_Stat.length; g++) {
 
-                RelationshipPerson_MSM[] changeCasualBehaviorCandidates;
+                int excessAbove; // Need to form new partnership
+                int excessBelow;
 
-                int excessAbove = 0; // Need to form new partnership
-                int excessBelow = 0;
-
-                for (int k = 0; k < g; k++) {
-                    excessBelow += Math.max(casualPart_Target[k] - casualPart_Stat[k], 0);
-                }
-                for (int k = g + 1; k < casualPart_Target.length; k++) {
-                    excessAbove += Math.max(casualPart_Target[k] - casualPart_Stat[k], 0);
-                }
+                excessBelow = shortfallBefore[g];
+                excessAbove = shortfallBefore[casualPart_Target.length] - shortfallBefore[g + 1];
 
                 diff = Math.max(casualPart_Stat[g] - casualPart_Target[g], 0);
 
-                changeCasualBehaviorCandidates = new RelationshipPerson_MSM[Math.min(diff, casualPart_candidateCollectionPt[g])];
+                int numChange = Math.min(diff, casualPart_candidateCollectionPt[g]);
+                if (casualChangeSlot.length < numChange) {
+                    casualChangeSlot = new int[Math.max(numChange, casualChangeSlot.length * 2)];
+                }
 
+                // Selection sampling of numChange candidates, in slot order
                 int cPt = 0;
                 for (int c = 0; c < casualPart_candidateCollectionPt[g]; c++) {
                     if (getRNG().nextInt(casualPart_candidateCollectionPt[g] - c) < diff) {
-                        changeCasualBehaviorCandidates[cPt] = casualPart_candidateCollection[g][c];
+                        casualChangeSlot[cPt] = casualCandidateSlot[g][c];
                         cPt++;
                         diff--;
                     } else {
-                        getRelMap()[MAPPING_CAS].removeAvailablePerson(casualPart_candidateCollection[g][c]);
+                        getRelMap()[MAPPING_CAS].removeAvailablePerson(getPop()[casualCandidateSlot[g][c]]);
                     }
                 }
 
-                if (changeCasualBehaviorCandidates.length > 0) {
+                if (numChange > 0) {
 
-                    for (RelationshipPerson_MSM candidate : changeCasualBehaviorCandidates) {
+                    for (int c = 0; c < numChange; c++) {
+                        RelationshipPerson_MSM candidate = (RelationshipPerson_MSM) getPop()[casualChangeSlot[c]];
                         if (getRNG().nextInt(excessAbove + excessBelow) < excessAbove) {
                             // Can seek new partner 
-                            if (getRelMap()[MAPPING_CAS].containsVertex(candidate.getId())
-                                    && getRelMap()[MAPPING_CAS].degreeOf(candidate.getId()) > 1) {
+                            if (getPartnerDegree(getRelMap()[MAPPING_CAS], candidate.getId()) > 1) {
                                 java.util.Set<SingleRelationship> edgeSet = getRelMap()[MAPPING_CAS].edgesOf(candidate.getId());
                                 SingleRelationship[] existingCasual
                                         = edgeSet.toArray(new SingleRelationship[edgeSet.size()]);
@@ -769,26 +1010,406 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
         }
 
-        HashMap<Integer, ArrayList<Integer>> booster
-                = (HashMap<Integer, ArrayList<Integer>>) getFields()[MSM_SITE_VACC_BOOSTER_SCHEDULE];
+        BoosterCalendarQueue booster = getBoosterSchedule();
+        int numBooster = booster.poll(getGlobalTime());
+        for (int b = 0; b < numBooster; b++) {
+            int boosterId = booster.getPolledId(b);
+            int boosterSlot = booster.getPolledSlot(b);
+            AbstractIndividualInterface boosterPerson;
+            if (boosterSlot >= 0) {
+                // Slot taken by new person if booster person had aged out, in which case no booster is given
+                boosterPerson = boosterSlot < getPop().length && getPop()[boosterSlot].getId() == boosterId
+                        ? getPop()[boosterSlot] : null;
+            } else {
+                boosterPerson = getPersonById(boosterId);
+            }
+            if (boosterPerson != null) {
+                vaccinatePerson(vacc, boosterPerson);
+            }
+        }
+
+        for (RelationshipMap relMap : getRelMap()) {
+            removeVertices(relMap, agedOut, numAgedOut);
+        }
+        Arrays.fill(agedOut, 0, numAgedOut, null);
+        numAgedOut = 0;
+
+        updatePairs();
+
+    }
+
+    /**
+     * Pool used by parallel person loop, shared by all populations with the same numThread.
+     * Its worker threads are daemon threads that end when idle, so the pool is never shut down.
+     *
+     * @return shared pool with parallelism of numThread
+     */
+    private static ForkJoinPool getParallelPool(int numThread) {
+        synchronized (sharedParallelPool) {
+            ForkJoinPool pool = sharedParallelPool.get(numThread);
+            if (pool == null) {
+                pool = new ForkJoinPool(numThread);
+                sharedParallelPool.put(numThread, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * @return true if all relationship maps are RelationshipMap_MSM, whose degree queries
+     * can be made from several threads at once
+     */
+    private boolean isRelMapIndexed() {
+        for (RelationshipMap relMap : getRelMap()) {
+            if (!(relMap instanceof RelationshipMap_MSM)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Availability update of person in current time step, as combination of AVAIL_X flags.
+     */
+    private int getAvailabilityUpdate(RelationshipPerson_MSM person, int behaviour, boolean useGlobalPopLimit) {
+        int update = 0;
+        if (person.getTimeUntilNextRelationship() < 0) {
+
+            if (behaviour != RelationshipPerson_MSM.BEHAV_CAS_ONLY) { // i.e. can have regular partnership                
+                if (getPartnerDegree(getRelMap()[MAPPING_REG], person.getId()) < 1) {
+                    update |= AVAIL_REG_ADD;
+                } else {
+                    update |= AVAIL_REG_REMOVE;
+                }
+            }
+            if (!useGlobalPopLimit && behaviour != RelationshipPerson_MSM.BEHAV_REG_ONLY) { // i.e. can have casual 
+                boolean seekingCasual = person.getIntParam(RelationshipPerson_MSM.PARAM_NUM_CASUAL_IN_LAST_6_MONTHS)
+                        < person.getMaxPartners();
+
+                seekingCasual &= getPartnerDegree(getRelMap()[MAPPING_CAS], person.getId()) < 1;
+
+                if (seekingCasual) {
+                    update |= AVAIL_CAS_ADD;
+                } else {
+                    update |= AVAIL_CAS_REMOVE;
+                }
+            }
+        }
+        return update;
+    }
+
+    private void applyAvailabilityUpdate(AbstractIndividualInterface person, int update) {
+        if ((update & AVAIL_REG_ADD) != 0) {
+            getRelMap()[MAPPING_REG].addAvailablePerson(person);
+        } else if ((update & AVAIL_REG_REMOVE) != 0) {
+            getRelMap()[MAPPING_REG].removeAvailablePerson(person);
+        }
+        if ((update & AVAIL_CAS_ADD) != 0) {
+            getRelMap()[MAPPING_CAS].addAvailablePerson(person);
+        } else if ((update & AVAIL_CAS_REMOVE) != 0) {
+            getRelMap()[MAPPING_CAS].removeAvailablePerson(person);
+        }
+    }
+
+    /**
+     * Availability update, casual partnership stat and snapshot count of all persons,
+     * after incrementPersonStat, age out and screening are done for the time step.
+     *
+     * <p>
+     * Persons are processed in chunks by a ForkJoinPool, with results merged
+     * (and relationship map availability updated) in slot order afterwards,
+     * so that results are the same as the sequential person loop regardless of number of thread.</p>
+     *
+     * <p>
+     * incrementPersonStat, age out and screening stay sequential, as they draw from the
+     * infection and population RNG in slot order, so results would depend on number of thread
+     * otherwise.</p>
+     *
+     * <p>
+     * Only used if all relationship maps are RelationshipMap_MSM (see isRelMapIndexed), as chunks
+     * query partner degree concurrently.</p>
+     *
+     * @return total number of persons in casual partnership stat
+     */
+    private int personLoopInParallel(int numThread, final boolean useGlobalPopLimit, final int[] behavCol,
+            int[] casualPart_Stat, int[] casualPart_candidateCollectionPt) {
+
+        int popSize = getPop().length;
+
+        // Index of relationship maps is queried by all chunks, so it must not be built by any of them
+        for (RelationshipMap relMap : getRelMap()) {
+            if (relMap instanceof RelationshipMap_MSM) {
+                ((RelationshipMap_MSM) relMap).ensureIndex();
+            }
+        }
+
+        ForkJoinPool pool = getParallelPool(numThread);
+        if (availabilityUpdateBySlot == null || availabilityUpdateBySlot.length != popSize) {
+            availabilityUpdateBySlot = new byte[popSize];
+        }
 
-        ArrayList<Integer> boosterSchedule = booster.remove(getGlobalTime());
-        if (boosterSchedule != null) {
-            for (int boosterId : boosterSchedule) {
-                vaccinatePerson(vacc, getLocalData().get(boosterId));
+        int numChunk = Math.max(1, Math.min(numThread * 4, popSize / PERSON_LOOP_MIN_CHUNK_SIZE));
+        if (personLoopChunk == null || personLoopChunk.length != numChunk) {
+            personLoopChunk = new MSMPersonLoopChunk[numChunk];
+            for (int c = 0; c < numChunk; c++) {
+                personLoopChunk[c] = new MSMPersonLoopChunk();
             }
         }
 
-        for (RelationshipPerson_MSM removePerson : toBeRemoved) {
-            for (RelationshipMap relMap : getRelMap()) {
-                if (relMap.containsVertex(removePerson.getId())) {
-                    relMap.removeVertex(removePerson);
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numChunk];
+        for (int c = 0; c < numChunk; c++) {
+            final MSMPersonLoopChunk chunk = personLoopChunk[c];
+            chunk.reset((int) ((long) popSize * c / numChunk), (int) ((long) popSize * (c + 1) / numChunk),
+                    casualPart_Stat.length, getNumInf().length, snapshotCount);
+            tasks[c] = pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    personLoopChunk(chunk, useGlobalPopLimit, behavCol);
                 }
+            });
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        // Availability update in slot order, with aged out persons removed at their slot
+        int agedOutPt = 0;
+        for (int p = 0; p < popSize; p++) {
+            while (agedOutPt < numAgedOut && agedOutSlot[agedOutPt] == p) {
+                for (RelationshipMap relMap : getRelMap()) {
+                    relMap.removeAvailablePerson(agedOut[agedOutPt]);
+                }
+                agedOutPt++;
+            }
+            if (availabilityUpdateBySlot[p] != 0) {
+                applyAvailabilityUpdate(getPop()[p], availabilityUpdateBySlot[p]);
             }
         }
 
-        updatePairs();
+        // Merge of chunks
+        int casualPart_Total = 0;
+        for (MSMPersonLoopChunk chunk : personLoopChunk) {
+            casualPart_Total += chunk.casualTotal;
+            for (int g = 0; g < casualPart_Stat.length; g++) {
+                casualPart_Stat[g] += chunk.casualStat[g];
+                if (chunk.numCandidate[g] > 0) {
+                    int numCandidate = casualPart_candidateCollectionPt[g] + chunk.numCandidate[g];
+                    if (numCandidate > casualCandidateSlot[g].length) {
+                        casualCandidateSlot[g] = Arrays.copyOf(casualCandidateSlot[g],
+                                Math.max(numCandidate, Math.min(casualCandidateSlot[g].length * 2, popSize)));
+                    }
+                    System.arraycopy(chunk.candidateSlot[g], 0, casualCandidateSlot[g],
+                            casualPart_candidateCollectionPt[g], chunk.numCandidate[g]);
+                    casualPart_candidateCollectionPt[g] = numCandidate;
+                }
+            }
+            for (int i = 0; i < chunk.numInf.length; i++) {
+                getNumInf()[i] += chunk.numInf[i];
+            }
+            for (int i = 0; i < chunk.snapshotCount.length; i++) {
+                if (chunk.snapshotCount[i] != null) {
+                    for (int cI = 0; cI < chunk.snapshotCount[i].length; cI++) {
+                        snapshotCount[i][cI] += chunk.snapshotCount[i][cI];
+                    }
+                }
+            }
+        }
+
+        return casualPart_Total;
+    }
+
+    private void personLoopChunk(MSMPersonLoopChunk chunk, boolean useGlobalPopLimit, int[] behavCol) {
+        for (int p = chunk.from; p < chunk.to; p++) {
+            RelationshipPerson_MSM person = (RelationshipPerson_MSM) getPop()[p];
+            int behaviour = behavCol != null ? behavCol[p]
+                    : person.getIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
+
+            if (useGlobalPopLimit && behaviour != RelationshipPerson_MSM.BEHAV_REG_ONLY) {
+                int numCasual = person.getNumCasualInRecord();
+                numCasual = Math.min(numCasual, chunk.casualStat.length - 1);
+                chunk.casualStat[numCasual]++;
+                if (person.getTimeUntilNextRelationship() < 0) {
+                    chunk.addCandidate(numCasual, p);
+                }
+                chunk.casualTotal++;
+            }
+
+            availabilityUpdateBySlot[p] = (byte) getAvailabilityUpdate(person, behaviour, useGlobalPopLimit);
+
+            snapshotCount(person, chunk.numInf, chunk.snapshotCount);
+        }
+    }
+
+    /**
+     * Rebuild vaccination state by slot from MSM_SITE_CURRENTLY_VACCINATED if
+     * it is not built from the current HashMap.
+     */
+    @SuppressWarnings("unchecked")
+    protected void syncVaccinationBySlot() {
+        HashMap<Integer, int[]> currentVaccinated = (HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED];
+        if (vaccExpiryAgeBySlot == null || vaccExpiryAgeBySlot.length != getPop().length
+                || vaccinatedBySlotSource != currentVaccinated) {
+            vaccExpiryAgeBySlot = new int[getPop().length];
+            Arrays.fill(vaccExpiryAgeBySlot, VACC_NOT_VACCINATED);
+            vaccinatedBySlotSource = currentVaccinated;
+            if (currentVaccinated != null && !currentVaccinated.isEmpty()) {
+                for (int p = 0; p < getPop().length; p++) {
+                    int[] vacSetting = currentVaccinated.get(getPop()[p].getId());
+                    if (vacSetting != null) {
+                        vaccExpiryAgeBySlot[p] = vacSetting[VACC_SETTING_AGE_EXPIRY];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a batch of persons from relationship map, skipping those who are not in map.
+     */
+    protected static void removeVertices(RelationshipMap relMap, AbstractIndividualInterface[] persons, int numPerson) {
+        if (relMap instanceof RelationshipMap_MSM) {
+            ((RelationshipMap_MSM) relMap).removeVertices(persons, numPerson);
+        } else {
+            for (int i = 0; i < numPerson; i++) {
+                if (relMap.containsVertex(persons[i].getId())) {
+                    relMap.removeVertex(persons[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return degree of person in relationship map, or 0 if not in map
+     */
+    protected static int getPartnerDegree(RelationshipMap relMap, int id) {
+        if (relMap instanceof RelationshipMap_MSM) {
+            return ((RelationshipMap_MSM) relMap).getDegree(id);
+        }
+        return relMap.containsVertex(id) ? relMap.degreeOf(id) : 0;
+    }
 
+    /**
+     * Assign population slot of all persons and id to slot index if not done
+     * so, e.g. for imported population.
+     */
+    protected void assignPopulationSlot() {
+        if (!populationSlotAssigned) {
+            slotById = null;
+            for (int p = 0; p < getPop().length; p++) {
+                setPopulationSlot((RelationshipPerson_MSM) getPop()[p], p);
+            }
+            populationSlotAssigned = true;
+        }
+    }
+
+    private void setPopulationSlot(RelationshipPerson_MSM person, int slot) {
+        int id = person.getId();
+        if (slotById == null) {
+            slotById = new int[Math.max(id, getPop().length) + 1];
+            Arrays.fill(slotById, -1);
+        } else if (id >= slotById.length) {
+            int oldLength = slotById.length;
+            slotById = Arrays.copyOf(slotById, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(slotById, oldLength, slotById.length, -1);
+        }
+        if (slot >= 0 || slotById[id] == person.getPopulationSlot()) {
+            slotById[id] = slot;
+        }
+        person.setPopulationSlot(slot);
+    }
+
+    /**
+     * @param id person id
+     * @return slot of person in getPop(), or -1 if the person is not in population
+     */
+    public int getPopulationSlotById(int id) {
+        assignPopulationSlot();
+        return id >= 0 && id < slotById.length ? slotById[id] : -1;
+    }
+
+    @Override
+    public AbstractIndividualInterface getPersonById(int id) {
+        int slot = getPopulationSlotById(id);
+        if (slot >= 0) {
+            return getPop()[slot];
+        }
+        return super.getPersonById(id);
+    }
+
+    /**
+     * Resolve person in relationship, by slot reference of RegCasRelationship_MSM if valid.
+     *
+     * @param rel relationship
+     * @param linkIndex index of person in rel.getLinks()
+     * @return person in relationship
+     */
+    public RelationshipPerson_MSM getRelationshipPerson(SingleRelationship rel, int linkIndex) {
+        if (rel instanceof RegCasRelationship_MSM) {
+            RegCasRelationship_MSM relMSM = (RegCasRelationship_MSM) rel;
+            int slot = relMSM.getLinkSlot(linkIndex);
+            if (slot >= 0 && slot < getPop().length && getPop()[slot].getId() == relMSM.getLinkId(linkIndex)) {
+                return (RelationshipPerson_MSM) getPop()[slot];
+            }
+            return (RelationshipPerson_MSM) getPersonById(relMSM.getLinkId(linkIndex));
+        }
+        return (RelationshipPerson_MSM) getPersonById(rel.getLinks()[linkIndex].intValue());
+    }
+
+    /**
+     * @return slot of person in getPop(), or -1 if the person is not in population
+     */
+    protected int getPopulationSlot(AbstractIndividualInterface person) {
+        if (person instanceof RelationshipPerson_MSM) {
+            int slot = ((RelationshipPerson_MSM) person).getPopulationSlot();
+            if (slot >= 0 && slot < getPop().length && getPop()[slot] == person) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return VACC_SETTING_AGE_EXPIRY of person (-1 = lifelong), or VACC_NOT_VACCINATED
+     */
+    @SuppressWarnings("unchecked")
+    private int getVaccExpiryAge(AbstractIndividualInterface person) {
+        int slot = getPopulationSlot(person);
+        if (slot >= 0 && vaccExpiryAgeBySlot != null) {
+            return vaccExpiryAgeBySlot[slot];
+        }
+        // Fallback for person not in population
+        HashMap<Integer, int[]> currentVaccinated = (HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED];
+        int[] vacSetting = currentVaccinated == null ? null : currentVaccinated.get(person.getId());
+        return vacSetting == null ? VACC_NOT_VACCINATED : vacSetting[VACC_SETTING_AGE_EXPIRY];
+    }
+
+    /**
+     * Set up casual record expiry from record of current persons, e.g. for
+     * imported population.
+     */
+    protected void initCasualRecordWheel() {
+        casualRecordWheel = new CasualRecordTimingWheel(RelationshipPerson_MSM.CASUAL_RECORD_DURATION);
+        for (AbstractIndividualInterface p : getPop()) {
+            RelationshipPerson_MSM person = (RelationshipPerson_MSM) p;
+            person.setCasualRecordExpiryByPopulation(true);
+            for (int i = 0; i < person.getNumCasualInRecord(); i++) {
+                casualRecordWheel.add(person, getGlobalTime() + person.getCasualRecordExpiryIn(i));
+            }
+        }
+    }
+
+    /**
+     * @return booster schedule, converted from HashMap if needed (e.g. imported population)
+     */
+    @SuppressWarnings("unchecked")
+    protected BoosterCalendarQueue getBoosterSchedule() {
+        Object booster = getFields()[MSM_SITE_VACC_BOOSTER_SCHEDULE];
+        if (!(booster instanceof BoosterCalendarQueue)) {
+            booster = booster == null ? new BoosterCalendarQueue()
+                    : BoosterCalendarQueue.fromScheduleMap((HashMap<Integer, ArrayList<Integer>>) booster);
+            getFields()[MSM_SITE_VACC_BOOSTER_SCHEDULE] = booster;
+        }
+        return (BoosterCalendarQueue) booster;
     }
 
     @SuppressWarnings("unchecked")
@@ -801,21 +1422,13 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                 }
 
                 vaccine.vaccinatePerson(person);
+                invalidateVaccineImpact(getPopulationSlot(person));
 
                 // Test booster
                 int[] vTime = vaccine.getValidTime();
                 if (vTime[vTime.length - 1] < 0) {
-                    HashMap<Integer, ArrayList<Integer>> booster
-                            = (HashMap<Integer, ArrayList<Integer>>) getFields()[MSM_SITE_VACC_BOOSTER_SCHEDULE];
                     int boosterTime = getGlobalTime() + -vTime[vTime.length - 1];
-
-                    ArrayList<Integer> ent = booster.get(boosterTime);
-
-                    if (ent == null) {
-                        ent = new ArrayList<>();
-                        booster.put(boosterTime, ent);
-                    }
-                    ent.add(person.getId());
+                    getBoosterSchedule().schedule(boosterTime, person.getId(), getPopulationSlot(person));
                 }
 
                 int[] vacSetting = new int[VACC_SETTING_LENGTH];
@@ -845,6 +1458,11 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
                 }                
                 ((HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED]).put(person.getId(), vacSetting);
+                syncVaccinationBySlot();
+                int slot = getPopulationSlot(person);
+                if (slot >= 0) {
+                    vaccExpiryAgeBySlot[slot] = vacSetting[VACC_SETTING_AGE_EXPIRY];
+                }
             }
         }
 
@@ -862,7 +1480,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
     private void screenPerson(RelationshipPerson_MSM msm, int screenType) {
         boolean foundInfection = false;
 
-        msm.setParameter("PARAM_LAST_SCREEN_AT_AGE", msm.getAge());
+        msm.setIntParam(RelationshipPerson_MSM.PARAM_LAST_SCREEN_AT_AGE, (int) msm.getAge());
 
         for (int site = 0; site < msm.getInfectionStatus().length && !foundInfection; site++) {
             foundInfection |= (((1 << site) & screenType) != 0)
@@ -879,7 +1497,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             pRepeat = ((float[]) getFields()[MSM_SCREENING_SETTING_TARGETED])[reIndex];
 
             if (pRepeat > 0 && getRNG().nextFloat() < pRepeat) {
-                msm.setParameter("PARAM_SCHEDULED_SCREEN_AT_AGE", msm.getAge() + 3 * 30);
+                msm.setIntParam(RelationshipPerson_MSM.PARAM_SCHEDULED_SCREEN_AT_AGE, (int) (msm.getAge() + 3 * 30));
             }
             treatPerson(msm);
         }
@@ -887,10 +1505,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
         // Vaccination by screening
         if (getFields()[MSM_SITE_SPECIFIC_VACCINATION] != null) {
             AbstractVaccination vacc = ((AbstractVaccination) getFields()[MSM_SITE_SPECIFIC_VACCINATION]);
-            @SuppressWarnings("unchecked")
-			HashMap<Integer, int[]> currentlyVaccinated = (HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED];
-
-            if (currentlyVaccinated == null || !currentlyVaccinated.containsKey(msm.getId())) {
+            if (getVaccExpiryAge(msm) == VACC_NOT_VACCINATED) {
                 if (vacc instanceof SiteSpecificVaccination) {
                     SiteSpecificVaccination ssv = (SiteSpecificVaccination) vacc;
                     double propVaccThruScreening = -ssv.getParameters()[SiteSpecificVaccination.EFFECT_INDEX_PROPORTION_VACC_COVERAGE_SETTING];
@@ -1001,22 +1616,59 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
     @Override
     protected AbstractIndividualInterface generateNewPerson(int nextId,
             AbstractIndividualInterface p, double newAge) {
-        RelationshipPerson_MSM person = (RelationshipPerson_MSM) p;
         RelationshipPerson_MSM newP = new RelationshipPerson_MSM(nextId,
                 true, newAge, p.getInfectionStatus().length);
+        inheritPersonSetting(newP, (RelationshipPerson_MSM) p);
+        return newP;
+    }
+
+    /**
+     * As generateNewPerson, but the new person takes over the MSM specific buffers
+     * (parameters or column store slot, and casual record) of the aged out person it
+     * replaces, see RelationshipPerson_MSM.resetMSMState. Same RNG usage (none) as
+     * generateNewPerson. The aged out person can only be used for removal afterward.
+     *
+     * @param nextId id of new person
+     * @param person aged out person, no longer in use by population
+     * @param newAge age of new person
+     * @return new person
+     */
+    protected RelationshipPerson_MSM recycleAgedOutPerson(int nextId,
+            RelationshipPerson_MSM person, double newAge) {
+        // Inherited setting, read before the buffers are taken over
+        int behav = person.getIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
+        int immuneG = person.getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G);
+        int immuneA = person.getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A);
+        int immuneR = person.getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R);
+        int maxPartners = person.getMaxPartners();
+
+        RelationshipPerson_MSM newP = new RelationshipPerson_MSM(nextId,
+                true, newAge, person.getInfectionStatus().length, person);
         newP.setEnterPopulationAt(getGlobalTime());
-        newP.setParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX),
-                person.getParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX)));
-        newP.setMaxPartners(person.getMaxPartners());
+        newP.setCasualRecordExpiryByPopulation(casualRecordWheel != null);
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX, behav);
+        newP.setMaxPartners(maxPartners);
 
         // Act specific immunity
-        newP.setParameter("PARAM_IMMUNE_ACT_SITE_G", p.getParameter("PARAM_IMMUNE_ACT_SITE_G"));
-        newP.setParameter("PARAM_IMMUNE_ACT_SITE_A", p.getParameter("PARAM_IMMUNE_ACT_SITE_A"));
-        newP.setParameter("PARAM_IMMUNE_ACT_SITE_R", p.getParameter("PARAM_IMMUNE_ACT_SITE_R"));
-
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G, immuneG);
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A, immuneA);
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R, immuneR);
         return newP;
     }
 
+    private void inheritPersonSetting(RelationshipPerson_MSM newP, RelationshipPerson_MSM person) {
+        newP.setEnterPopulationAt(getGlobalTime());
+        newP.setCasualRecordExpiryByPopulation(casualRecordWheel != null);
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX,
+                person.getIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX));
+        newP.setMaxPartners(person.getMaxPartners());
+
+        // Act specific immunity
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G, person.getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G));
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A, person.getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A));
+        newP.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R, person.getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R));
+    }
+
     protected AbstractInfection[] incrementPersonStat(AbstractIndividualInterface person, int deltaT) {
         AbstractInfection[] infList = getIndivdualInfectionList(person);
         int[] preInfectStat = Arrays.copyOf(person.getInfectionStatus(), person.getInfectionStatus().length);
@@ -1067,13 +1719,11 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
         // Effect of Vaccination
         if (getFields()[MSM_SITE_CURRENTLY_VACCINATED] != null
                 && getFields()[MSM_SITE_SPECIFIC_VACCINATION] != null) {
-            @SuppressWarnings("unchecked")
-			HashMap<Integer, int[]> currentVaccinated = (HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED];
             SiteSpecificVaccination vaccine = (SiteSpecificVaccination) getFields()[MSM_SITE_SPECIFIC_VACCINATION];
-            int[] vacRes = currentVaccinated.get(person.getId());
+            int vacExpiryAge = getVaccExpiryAge(person);
 
-            if (vacRes != null) {
-                if (person.getAge() < vacRes[VACC_SETTING_AGE_EXPIRY]) { // Active vaccine
+            if (vacExpiryAge != VACC_NOT_VACCINATED) {
+                if (person.getAge() < vacExpiryAge) { // Active vaccine
                     // Just become infectious 
                     for (int site = 0; site < getInfList().length; site++) {
                         if (justBecomeInfectious[site]) {
@@ -1125,43 +1775,146 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
         return removeSym;
     }
 
+    /**
+     * Acts of relationship for today.
+     *
+     * <p>
+     * The returned array is a buffer owned by this population and is overwritten by the
+     * next call to performAct. Callers (including subclasses) that keep the result beyond
+     * that must copy it.</p>
+     *
+     * @param rel relationship
+     * @return hasUnprotectedSex[actType]{occured, from_person_1, from_person_2}
+     */
     @SuppressWarnings("unchecked")
 	@Override
     protected boolean[][] performAct(RegCasRelationship rel) {
 
         boolean[] hasActed = rel.hasActToday();
-        boolean[][] res = new boolean[hasActed.length][3]; // hasUnprotectedSex[actType]{occured, from_person_1, from_person_2}
 
-        int[][] infectStat = new int[rel.getLinks().length][];
-        int[][] strainStat = new int[rel.getLinks().length][];
+        if (actBuffer == null) {
+            actBuffer = new MSMActBuffer();
+        }
+        boolean[][] res = actBuffer.reset(hasActed.length, rel.getLinks().length);
 
-        double[][] vaccineImpact = new double[rel.getLinks().length][];
+        int numActThread = getActBatchNumThread();
+        if (numActThread > 0 && rel instanceof RegCasRelationship_MSM) {
+            if (!actBatchDone || actBatchDay != getGlobalTime()) {
+                performActsInBatch(numActThread);
+                res = actBuffer.reset(hasActed.length, rel.getLinks().length);
+            }
+            boolean[][] batchRes = ((RegCasRelationship_MSM) rel).getBatchActResult(getGlobalTime());
+            if (batchRes != null) {
+                numActBatchUnclaimed--;
+                for (int a = 0; a < res.length && a < batchRes.length; a++) {
+                    System.arraycopy(batchRes[a], 0, res[a], 0, res[a].length);
+                }
+                return res;
+            }
+        }
 
-        RelationshipPerson_MSM[] person = new RelationshipPerson_MSM[rel.getLinks().length];
+        if (rel instanceof RegCasRelationship_MSM && ((RegCasRelationship_MSM) rel).getDaysToNextAct() != null) {
+            hasActed = actBuffer.copyHasActed(hasActed);
+            if (!countDownActSchedule((RegCasRelationship_MSM) rel, hasActed)) {
+                return res; // No act today
+            }
+        }
+        return performAct(rel, hasActed, actBuffer, cumulativeIncidencesBySites);
+    }
 
-        for (int p = 0; p < rel.getLinks().length; p++) {
-            person[p] = (RelationshipPerson_MSM) getLocalData().get(rel.getLinks()[p].intValue());
-            infectStat[p] = person[p].getInfectionStatus();
-            strainStat[p] = person[p].getCurrentStrainsAtSite();
+    /**
+     * Count down days until next act of relationship with acts scheduled by population
+     * (MSM_USE_ACT_SCHEDULE) by a day, and mark acts due today in hasActed. The next act
+     * is drawn for acts due today.
+     *
+     * @param rel relationship
+     * @param hasActed acts occurred today, with those scheduled by RegCasRelationship already set
+     * @return true if any act occurs today
+     */
+    private boolean countDownActSchedule(RegCasRelationship_MSM rel, boolean[] hasActed) {
+        int[] daysToNextAct = rel.getDaysToNextAct();
+        boolean anyAct = false;
+        for (int a = 0; a < hasActed.length; a++) {
+            if (a < daysToNextAct.length && daysToNextAct[a] != RegCasRelationship_MSM.ACT_NOT_SCHEDULED) {
+                if (daysToNextAct[a] != Integer.MAX_VALUE) {
+                    daysToNextAct[a]--;
+                }
+                hasActed[a] = daysToNextAct[a] == 0;
+                if (hasActed[a]) {
+                    daysToNextAct[a] = nextActInDays(rel.getActProbPerDay()[a],
+                            actScheduleRandomDouble(rel, a));
+                }
+            }
+            anyAct |= hasActed[a];
+        }
+        return anyAct;
+    }
 
-            if (getFields()[MSM_SITE_SPECIFIC_VACCINATION] != null) {
-                SiteSpecificVaccination vacc = (SiteSpecificVaccination) getFields()[MSM_SITE_SPECIFIC_VACCINATION];
+    /**
+     * Days until next act, for acts scheduled by population (MSM_USE_ACT_SCHEDULE).
+     * By default geometric with success probability probPerDay, so that acts occur on
+     * the same expected number of days as with a daily draw of probPerDay.
+     *
+     * @param probPerDay probability of act per day
+     * @param rand uniform random number in [0, 1)
+     * @return days until next act, from 1, or Integer.MAX_VALUE if probPerDay <= 0
+     */
+    protected int nextActInDays(float probPerDay, double rand) {
+        if (probPerDay <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        if (probPerDay >= 1) {
+            return 1;
+        }
+        double days = Math.floor(Math.log(1 - rand) / Math.log(1 - probPerDay)) + 1;
+        return days >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) days;
+    }
+
+    private double actScheduleRandomDouble(RegCasRelationship_MSM rel, int act) {
+        CounterBasedRandomGenerator rng = getCounterBasedRNG();
+        if (rng == null) {
+            return getRNG().nextDouble();
+        }
+        return rng.nextDouble(getGlobalTime(), rel.getLinkId(0), rel.getLinkId(1),
+                actRandomCounter(rel, RNG_PURPOSE_ACT_SCHEDULE, act, 0));
+    }
 
-                int[] vacState = null;
+    /**
+     * Acts of relationship, with given buffers and incidence count.
+     *
+     * @param rel relationship
+     * @param hasActed acts occurred today, from rel.hasActToday()
+     * @param buffer buffer, with result cleared
+     * @param incidence incidence by site, to be incremented
+     * @return result, in buffer
+     */
+    private boolean[][] performAct(RegCasRelationship rel, boolean[] hasActed, MSMActBuffer buffer, int[] incidence) {
+        boolean[][] res = buffer.res;
 
-                if (getFields()[MSM_SITE_CURRENTLY_VACCINATED] != null) {
-                    vacState = ((HashMap<Integer, int[]>) getFields()[MSM_SITE_CURRENTLY_VACCINATED]).get(person[p].getId());
-                }
+        int[][] infectStat = buffer.infectStat;
+        int[][] strainStat = buffer.strainStat;
 
-                if (vacState != null
-                        && (vacState[VACC_SETTING_AGE_EXPIRY] < 0
-                        || vacState[VACC_SETTING_AGE_EXPIRY] > person[p].getAge())) {
-                    vaccineImpact[p] = vacc.vaccineImpact(person[p], null);
-                } else {
-                    vaccineImpact[p] = null;
-                }
+        double[][] vaccineImpact = buffer.vaccineImpact;
+
+        RelationshipPerson_MSM[] person = buffer.person;
+
+        boolean anyInfectious = false;
+        for (int p = 0; p < rel.getLinks().length; p++) {
+            person[p] = getRelationshipPerson(rel, p);
+            infectStat[p] = person[p].getInfectionStatus();
+            strainStat[p] = person[p].getCurrentStrainsAtSite();
+            for (int site = 0; site < infectStat[p].length && !anyInfectious; site++) {
+                anyInfectious = infectStat[p][site] == GonorrhoeaSiteInfection.STATUS_ASY
+                        || infectStat[p][site] == GonorrhoeaSiteInfection.STATUS_SYM;
             }
+        }
 
+        if (!anyInfectious) {
+            return performActWithoutTransmission(rel, hasActed, res, person);
+        }
+
+        for (int p = 0; p < rel.getLinks().length; p++) {
+            vaccineImpact[p] = getActVaccineImpact(person[p]);
         }
 
         float[] protectAdj = rel.getType() == RegCasRelationship.REL_TYPE_REG
@@ -1199,16 +1952,17 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                                     }
 
                                     if (r2r < 1) {
-                                        tranR2R = ((GonorrhoeaSiteInfection) getInfList()[RelationshipPerson_MSM.SITE_R]).getRNG().nextDouble() < r2r;
+                                        tranR2R = actRandomDouble(getInfList()[RelationshipPerson_MSM.SITE_R].getRNG(), rel, person,
+                                                RNG_PURPOSE_TRANSMISSION, ACT_KISSING, s) < r2r;
                                     }
 
-                                    if ((((int) person[s].getParameter("PARAM_IMMUNE_ACT_SITE_R")) & (1 << ACT_KISSING)) != 0) {
+                                    if ((person[s].getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R) & (1 << ACT_KISSING)) != 0) {
                                         tranR2R = false;
                                     }
 
                                     if (tranR2R) {
                                         res[a][(s + 1) % 2] = true;
-                                        cumulativeIncidencesBySites[RelationshipPerson_MSM.SITE_R]++;
+                                        incidence[RelationshipPerson_MSM.SITE_R]++;
                                         person[s].setLastActInfectious(RelationshipPerson_MSM.SITE_R, true);
                                         if (person[s] instanceof MultiSiteMultiStrainPersonInterface) {
                                             ((MultiSiteMultiStrainPersonInterface) person[s]).getLastActStainsAtSite()[RelationshipPerson_MSM.SITE_R]
@@ -1255,13 +2009,14 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                                     || infectStat[(s + 1) % 2][RelationshipPerson_MSM.SITE_A] == GonorrhoeaSiteInfection.STATUS_SYM)) {
 
                                 if (a2r < 1) {
-                                    tranA2R = ((GonorrhoeaSiteInfection) getInfList()[RelationshipPerson_MSM.SITE_A]).getRNG().nextDouble() < a2r;
+                                    tranA2R = actRandomDouble(getInfList()[RelationshipPerson_MSM.SITE_A].getRNG(), rel, person,
+                                            RNG_PURPOSE_TRANSMISSION, ACT_RIMMING, 2 * s) < a2r;
                                 }
-                                if ((((int) person[s].getParameter("PARAM_IMMUNE_ACT_SITE_R")) & (1 << ACT_RIMMING)) != 0) {
+                                if ((person[s].getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R) & (1 << ACT_RIMMING)) != 0) {
                                     tranA2R = false;
                                 }
                                 if (tranA2R && !person[s].getLastActInfectious()[RelationshipPerson_MSM.SITE_R]) {
-                                    cumulativeIncidencesBySites[RelationshipPerson_MSM.SITE_R]++;
+                                    incidence[RelationshipPerson_MSM.SITE_R]++;
                                     res[a][(s + 1) % 2] = true;
                                     person[s].setLastActInfectious(RelationshipPerson_MSM.SITE_R, true);
 
@@ -1277,14 +2032,15 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                                     || infectStat[(s + 1) % 2][RelationshipPerson_MSM.SITE_R] == GonorrhoeaSiteInfection.STATUS_SYM)) {
 
                                 if (r2a < 1) {
-                                    tranR2A = ((GonorrhoeaSiteInfection) getInfList()[RelationshipPerson_MSM.SITE_R]).getRNG().nextDouble() < r2a;
+                                    tranR2A = actRandomDouble(getInfList()[RelationshipPerson_MSM.SITE_R].getRNG(), rel, person,
+                                            RNG_PURPOSE_TRANSMISSION, ACT_RIMMING, 2 * s + 1) < r2a;
                                 }
-                                if ((((int) person[s].getParameter("PARAM_IMMUNE_ACT_SITE_A")) & (1 << ACT_RIMMING)) != 0) {
+                                if ((person[s].getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A) & (1 << ACT_RIMMING)) != 0) {
                                     tranR2A = false;
                                 }
                                 if (tranR2A && !person[s].getLastActInfectious()[RelationshipPerson_MSM.SITE_A]) {
                                     res[a][(s + 1) % 2] = true;
-                                    cumulativeIncidencesBySites[RelationshipPerson_MSM.SITE_A]++;
+                                    incidence[RelationshipPerson_MSM.SITE_A]++;
                                     person[s].setLastActInfectious(RelationshipPerson_MSM.SITE_A, true);
                                     if (person[s] instanceof MultiSiteMultiStrainPersonInterface) {
                                         ((MultiSiteMultiStrainPersonInterface) person[s]).getLastActStainsAtSite()[RelationshipPerson_MSM.SITE_A] = ((MultiSiteMultiStrainPersonInterface) person[(s + 1) % 2]).getCurrentStrainsAtSite()[RelationshipPerson_MSM.SITE_R];
@@ -1298,7 +2054,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                     case ACT_ANAL:
                     case ACT_ORAL:
                         int nonGTarget = a == ACT_ANAL ? RelationshipPerson_MSM.SITE_A : RelationshipPerson_MSM.SITE_R;
-                        String nonGTargetImmune = a == ACT_ANAL ? "PARAM_IMMUNE_ACT_SITE_A" : "PARAM_IMMUNE_ACT_SITE_R";
+                        int nonGTargetImmune = a == ACT_ANAL ? RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_A : RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_R;
                         float probCondomUse = rel.getType() == RegCasRelationship.REL_TYPE_REG
                                 ? ((float[]) getFields()[MSM_POP_REG_CONDOM_USAGE])[a]
                                 : ((float[]) getFields()[MSM_POP_CAS_CONDOM_USAGE])[a];
@@ -1317,16 +2073,16 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                         // Determine if condom is use for the act
                         boolean unprotectedAct = probCondomUse == 0;
                         if (!unprotectedAct && probCondomUse < 1) {
-                            unprotectedAct = getRNG().nextFloat() > probCondomUse;
+                            unprotectedAct = actRandomFloat(rel, person, a) > probCondomUse;
                         }
 
                         for (int s = 0; s < rel.getLinks().length; s++) {
 
                             if (unprotectedAct) {
                                 if (a == ACT_ANAL) {
-                                    person[s].setParameter("PARAM_LAST_UNPROTECTED_ANAL_SEX_AT_AGE", person[s].getAge());
+                                    person[s].setIntParam(RelationshipPerson_MSM.PARAM_LAST_UNPROTECTED_ANAL_SEX_AT_AGE, (int) person[s].getAge());
                                 } else if (a == ACT_ORAL) {
-                                    person[s].setParameter("PARAM_LAST_UNPROTECTED_ORAL_SEX_AT_AGE", person[s].getAge());
+                                    person[s].setIntParam(RelationshipPerson_MSM.PARAM_LAST_UNPROTECTED_ORAL_SEX_AT_AGE, (int) person[s].getAge());
                                 }
                                 res[a][0] = true;
 
@@ -1347,7 +2103,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                                     tranSucProb = person[(s + 1) % 2].getProbTransBySite()[RelationshipPerson_MSM.SITE_G]
                                             * person[s].getProbSusBySite()[nonGTarget];
 
-                                    if ((((int) person[s].getParameter(nonGTargetImmune)) & (1 << a)) != 0) {
+                                    if ((person[s].getIntParam(nonGTargetImmune) & (1 << a)) != 0) {
                                         // E.g. Insertive to anal or oral sex
                                         tranSucProb = 0;
                                     }
@@ -1365,13 +2121,13 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
                                     boolean g2NG = tranSucProb > 0;
                                     if (g2NG && tranSucProb < 1) {
-                                        g2NG = ((GonorrhoeaSiteInfection) getInfList()[RelationshipPerson_MSM.SITE_G]).getRNG().nextDouble()
-                                                < tranSucProb;
+                                        g2NG = actRandomDouble(getInfList()[RelationshipPerson_MSM.SITE_G].getRNG(), rel, person,
+                                                RNG_PURPOSE_TRANSMISSION, a, 2 * s) < tranSucProb;
                                     }
 
                                     if (g2NG) {
                                         res[a][(s + 1) % 2] = true;
-                                        cumulativeIncidencesBySites[nonGTarget]++;
+                                        incidence[nonGTarget]++;
                                         person[s].setLastActInfectious(nonGTarget, true);
                                         if (person[s] instanceof MultiSiteMultiStrainPersonInterface) {
                                             ((MultiSiteMultiStrainPersonInterface) person[s]).getLastActStainsAtSite()[nonGTarget] = ((MultiSiteMultiStrainPersonInterface) person[(s + 1) % 2]).getCurrentStrainsAtSite()[RelationshipPerson_MSM.SITE_G];
@@ -1394,7 +2150,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                                     tranSucProb = person[(s + 1) % 2].getProbTransBySite()[nonGTarget]
                                             * person[s].getProbSusBySite()[RelationshipPerson_MSM.SITE_G];
 
-                                    if ((((int) person[s].getParameter("PARAM_IMMUNE_ACT_SITE_G")) & (1 << a)) != 0) {
+                                    if ((person[s].getIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G) & (1 << a)) != 0) {
                                         // Eg. Receptive to anal or oral sex
                                         tranSucProb = 0;
                                     }
@@ -1413,12 +2169,12 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                                     boolean nG2G = tranSucProb > 0;
 
                                     if (nG2G && tranSucProb < 1) {
-                                        nG2G = ((GonorrhoeaSiteInfection) getInfList()[nonGTarget]).getRNG().nextDouble()
-                                                < tranSucProb;
+                                        nG2G = actRandomDouble(getInfList()[nonGTarget].getRNG(), rel, person,
+                                                RNG_PURPOSE_TRANSMISSION, a, 2 * s + 1) < tranSucProb;
                                     }
                                     if (nG2G) {
                                         res[a][(s + 1) % 2] = true;
-                                        cumulativeIncidencesBySites[RelationshipPerson_MSM.SITE_G]++;
+                                        incidence[RelationshipPerson_MSM.SITE_G]++;
                                         person[s].setLastActInfectious(RelationshipPerson_MSM.SITE_G, true);
                                         if (person[s] instanceof MultiSiteMultiStrainPersonInterface) {
                                             ((MultiSiteMultiStrainPersonInterface) person[s]).getLastActStainsAtSite()[RelationshipPerson_MSM.SITE_G] = ((MultiSiteMultiStrainPersonInterface) person[(s + 1) % 2]).getCurrentStrainsAtSite()[nonGTarget];
@@ -1435,6 +2191,372 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
 
         return res;
     }
+    /**
+     * @return vaccine impact of person for performAct, or null if not vaccinated or vaccine has expired
+     */
+    private double[] getActVaccineImpact(RelationshipPerson_MSM person) {
+        if (getFields()[MSM_SITE_SPECIFIC_VACCINATION] != null) {
+            SiteSpecificVaccination vacc = (SiteSpecificVaccination) getFields()[MSM_SITE_SPECIFIC_VACCINATION];
+
+            int vacExpiryAge = getVaccExpiryAge(person);
+
+            if (vacExpiryAge != VACC_NOT_VACCINATED
+                    && (vacExpiryAge < 0 || vacExpiryAge > person.getAge())) {
+                return getVaccineImpact(vacc, person);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of thread for acts in batch (MSM_ACT_NUM_THREAD), or 0 if acts are not
+     * processed in batch
+     */
+    private int getActBatchNumThread() {
+        int numThread = getFields()[MSM_ACT_NUM_THREAD] == null ? 0
+                : ((Number) getFields()[MSM_ACT_NUM_THREAD]).intValue();
+        if (numThread <= 0) {
+            return 0;
+        }
+        if (getFields()[MSM_USE_ACT_SCHEDULE] == null || !((Boolean) getFields()[MSM_USE_ACT_SCHEDULE])
+                || getCounterBasedRNG() == null) {
+            if (!actBatchSettingReported) {
+                System.err.println("MSM_ACT_NUM_THREAD = " + numThread + " ignored, as it requires both "
+                        + "MSM_USE_ACT_SCHEDULE and MSM_USE_COUNTER_BASED_RNG. Acts are processed sequentially.");
+                actBatchSettingReported = true;
+            }
+            return 0;
+        }
+        return numThread;
+    }
+
+    /**
+     * @return true if all acts of relationship are scheduled by population (MSM_USE_ACT_SCHEDULE)
+     */
+    private static boolean isActScheduledByPopulation(RegCasRelationship_MSM rel) {
+        int[] daysToNextAct = rel.getDaysToNextAct();
+        if (daysToNextAct == null) {
+            return false;
+        }
+        for (int days : daysToNextAct) {
+            if (days == RegCasRelationship_MSM.ACT_NOT_SCHEDULED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Acts of the day for relationships with all acts scheduled by population (MSM_USE_ACT_SCHEDULE),
+     * processed in parallel before performAct is called for any of them. performAct then returns the
+     * result recorded in the relationship, so the flags it returns are the same as if acts were processed
+     * in the call.
+     *
+     * <p>
+     * Relationships are coloured in order of relationship map and edge set, with the colour of a
+     * relationship higher than that of any earlier relationship sharing a person. Relationships of the
+     * same colour share no person, and the acts of each person are processed in the same order
+     * regardless of number of thread. Colours are processed in order, each in chunks by a ForkJoinPool,
+     * with incidence counted by chunk and added to cumulativeIncidencesBySites afterwards. Vaccine impact
+     * of persons is cached for the day before chunks start.</p>
+     *
+     * <p>
+     * Draws are keyed by the counter-based RNG, so results do not depend on number of thread. Acts of
+     * other relationships (e.g. with acts scheduled by RegCasRelationship) are processed when performAct
+     * is called for them, after all acts in batch, so results differ from MSM_ACT_NUM_THREAD = 0.</p>
+     *
+     * <p>
+     * Assumes performAct is called once for each relationship in the relationship maps on the day, as
+     * by the relationship walk of incrementTime. Batch results not claimed by performAct are reported.</p>
+     *
+     * @param numThread number of thread
+     */
+    private void performActsInBatch(int numThread) {
+        if (actBatchDone && numActBatchUnclaimed != 0) {
+            System.err.println("Acts of " + numActBatchUnclaimed + " relationship(s) processed in batch on day "
+                    + actBatchDay + " were not claimed by performAct.");
+        }
+        actBatchDone = true;
+        actBatchDay = getGlobalTime();
+        numActBatchUnclaimed = 0;
+
+        int popSize = getPop().length;
+        if (actColourBySlot == null || actColourBySlot.length != popSize) {
+            actColourBySlot = new int[popSize];
+        } else {
+            Arrays.fill(actColourBySlot, 0);
+        }
+        if (actBatchRel == null) {
+            actBatchRel = new RegCasRelationship_MSM[64];
+            actBatchMask = new int[actBatchRel.length];
+            actBatchColour = new int[actBatchRel.length];
+        }
+
+        // Act schedule and colouring, in order
+        int numBatch = 0;
+        int maxColour = 0;
+        for (RelationshipMap relMap : getRelMap()) {
+            for (SingleRelationship e : relMap.edgeSet()) {
+                if (!(e instanceof RegCasRelationship_MSM) || e.getLinks().length != 2
+                        || !isActScheduledByPopulation((RegCasRelationship_MSM) e)) {
+                    continue;
+                }
+                RegCasRelationship_MSM rel = (RegCasRelationship_MSM) e;
+                RelationshipPerson_MSM p0 = getRelationshipPerson(rel, 0);
+                RelationshipPerson_MSM p1 = getRelationshipPerson(rel, 1);
+                int slot0 = getPopulationSlot(p0);
+                int slot1 = getPopulationSlot(p1);
+                if (slot0 < 0 || slot1 < 0) {
+                    continue; // Processed by performAct instead
+                }
+
+                int numAct = rel.getDaysToNextAct().length;
+                boolean[][] res = actBuffer.reset(numAct, 2);
+                boolean[] hasActed = actBuffer.setHasActed(numAct, 0);
+                numActBatchUnclaimed++;
+                if (!countDownActSchedule(rel, hasActed)) {
+                    rel.setBatchActResult(actBatchDay, res);
+                    continue;
+                }
+
+                if (numBatch == actBatchRel.length) {
+                    actBatchRel = Arrays.copyOf(actBatchRel, numBatch * 2);
+                    actBatchMask = Arrays.copyOf(actBatchMask, numBatch * 2);
+                    actBatchColour = Arrays.copyOf(actBatchColour, numBatch * 2);
+                }
+                int mask = 0;
+                for (int a = 0; a < numAct; a++) {
+                    if (hasActed[a]) {
+                        mask |= 1 << a;
+                    }
+                }
+                int colour = Math.max(actColourBySlot[slot0], actColourBySlot[slot1]) + 1;
+                actColourBySlot[slot0] = colour;
+                actColourBySlot[slot1] = colour;
+                maxColour = Math.max(maxColour, colour);
+
+                actBatchRel[numBatch] = rel;
+                actBatchMask[numBatch] = mask;
+                actBatchColour[numBatch] = colour;
+                numBatch++;
+
+                // Cached for the day, so chunks only read it
+                getActVaccineImpact(p0);
+                getActVaccineImpact(p1);
+            }
+        }
+
+        // Order by colour, and by order of colouring within colour
+        if (actBatchColourStart == null || actBatchColourStart.length < maxColour + 2) {
+            actBatchColourStart = new int[maxColour + 2];
+        } else {
+            Arrays.fill(actBatchColourStart, 0);
+        }
+        for (int i = 0; i < numBatch; i++) {
+            actBatchColourStart[actBatchColour[i] + 1]++;
+        }
+        for (int c = 1; c < maxColour + 2; c++) {
+            actBatchColourStart[c] += actBatchColourStart[c - 1];
+        }
+        if (actBatchOrder == null || actBatchOrder.length < numBatch) {
+            actBatchOrder = new int[actBatchRel.length];
+        }
+        for (int i = 0; i < numBatch; i++) {
+            int c = actBatchColour[i];
+            actBatchOrder[actBatchColourStart[c]] = i;
+            actBatchColourStart[c]++;
+        }
+        // actBatchColourStart[c] is now end of colour c, i.e. start of colour c + 1
+
+        int maxChunk = numThread * 4;
+        if (actBatchBuffer == null || actBatchBuffer.length != maxChunk) {
+            actBatchBuffer = new MSMActBuffer[maxChunk];
+            for (int b = 0; b < maxChunk; b++) {
+                actBatchBuffer[b] = new MSMActBuffer();
+            }
+        }
+        ForkJoinPool pool = getParallelPool(numThread);
+
+        for (int c = 1; c <= maxColour; c++) {
+            int from = actBatchColourStart[c - 1];
+            int to = actBatchColourStart[c];
+            int numChunk = Math.max(1, Math.min(maxChunk, (to - from) / ACT_BATCH_MIN_CHUNK_SIZE));
+            if (numChunk == 1) {
+                processActBatchChunk(actBatchBuffer[0], from, to);
+            } else {
+                ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numChunk];
+                for (int k = 0; k < numChunk; k++) {
+                    final MSMActBuffer buffer = actBatchBuffer[k];
+                    final int chunkFrom = from + (int) ((long) (to - from) * k / numChunk);
+                    final int chunkTo = from + (int) ((long) (to - from) * (k + 1) / numChunk);
+                    tasks[k] = pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            processActBatchChunk(buffer, chunkFrom, chunkTo);
+                        }
+                    });
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            }
+        }
+
+        for (MSMActBuffer buffer : actBatchBuffer) {
+            for (int s = 0; s < buffer.incidence.length; s++) {
+                cumulativeIncidencesBySites[s] += buffer.incidence[s];
+                buffer.incidence[s] = 0;
+            }
+        }
+        Arrays.fill(actBatchRel, 0, numBatch, null);
+    }
+
+    /**
+     * Acts of relationships in batch, from actBatchOrder[from] to actBatchOrder[to - 1].
+     */
+    private void processActBatchChunk(MSMActBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int b = actBatchOrder[i];
+            RegCasRelationship_MSM rel = actBatchRel[b];
+            int numAct = rel.getDaysToNextAct().length;
+            buffer.reset(numAct, rel.getLinks().length);
+            boolean[] hasActed = buffer.setHasActed(numAct, actBatchMask[b]);
+            rel.setBatchActResult(actBatchDay, performAct(rel, hasActed, buffer, buffer.incidence));
+        }
+    }
+
+    private void initVaccineImpactCache(AbstractVaccination vacc) {
+        if (vaccineImpactDay == null || vaccineImpactDay.length != getPop().length || vaccineImpactSource != vacc) {
+            vaccineImpactBySlot = new double[getPop().length][];
+            vaccineImpactDay = new int[getPop().length];
+            Arrays.fill(vaccineImpactDay, VACC_IMPACT_NOT_CACHED);
+            vaccineImpactSource = vacc;
+        }
+    }
+
+    /**
+     * @return vacc.vaccineImpact(person, null), cached by population slot for the day
+     */
+    private double[] getVaccineImpact(AbstractVaccination vacc, RelationshipPerson_MSM person) {
+        int slot = getPopulationSlot(person);
+        if (slot < 0) {
+            return vacc.vaccineImpact(person, null);
+        }
+        initVaccineImpactCache(vacc);
+        if (vaccineImpactDay[slot] != getGlobalTime()) {
+            double[] impact = vacc.vaccineImpact(person, null);
+            if (impact == null) {
+                return null;
+            }
+            if (vaccineImpactBySlot[slot] == null || vaccineImpactBySlot[slot].length != impact.length) {
+                vaccineImpactBySlot[slot] = new double[impact.length];
+            }
+            System.arraycopy(impact, 0, vaccineImpactBySlot[slot], 0, impact.length);
+            vaccineImpactDay[slot] = getGlobalTime();
+        }
+        return vaccineImpactBySlot[slot];
+    }
+
+    private void invalidateVaccineImpact(int slot) {
+        if (slot >= 0 && vaccineImpactDay != null && slot < vaccineImpactDay.length) {
+            vaccineImpactDay[slot] = VACC_IMPACT_NOT_CACHED;
+        }
+    }
+
+    /**
+     * @return counter-based RNG of this population if MSM_USE_COUNTER_BASED_RNG is set, or null otherwise
+     */
+    public CounterBasedRandomGenerator getCounterBasedRNG() {
+        if (getFields()[MSM_USE_COUNTER_BASED_RNG] == null
+                || !((Boolean) getFields()[MSM_USE_COUNTER_BASED_RNG])) {
+            return null;
+        }
+        if (counterBasedRNG == null) {
+            counterBasedRNG = new CounterBasedRandomGenerator(getSeed());
+        }
+        return counterBasedRNG;
+    }
+
+    // Counter of draw in performAct, as (day, id of partners, relationship type / purpose / act / index)
+    private int actRandomCounter(RegCasRelationship rel, int purpose, int act, int index) {
+        return (rel.getType() << 28) | (purpose << 24) | (act << 16) | index;
+    }
+
+    private double actRandomDouble(random.RandomGenerator sequentialRNG, RegCasRelationship rel,
+            RelationshipPerson_MSM[] person, int purpose, int act, int index) {
+        CounterBasedRandomGenerator rng = getCounterBasedRNG();
+        if (rng == null) {
+            return sequentialRNG.nextDouble();
+        }
+        return rng.nextDouble(getGlobalTime(), person[0].getId(), person[1].getId(),
+                actRandomCounter(rel, purpose, act, index));
+    }
+
+    private float actRandomFloat(RegCasRelationship rel, RelationshipPerson_MSM[] person, int act) {
+        CounterBasedRandomGenerator rng = getCounterBasedRNG();
+        if (rng == null) {
+            return getRNG().nextFloat();
+        }
+        return rng.nextFloat(getGlobalTime(), person[0].getId(), person[1].getId(),
+                actRandomCounter(rel, RNG_PURPOSE_CONDOM, act, 0));
+    }
+
+    /**
+     * performAct for relationship where neither partner is infectious at any site,
+     * with the same behaviour record, result and RNG usage (condom use only) but
+     * without the transmission steps.
+     */
+    private boolean[][] performActWithoutTransmission(RegCasRelationship rel, boolean[] hasActed,
+            boolean[][] res, RelationshipPerson_MSM[] person) {
+
+        float[] protectAdj = rel.getType() == RegCasRelationship.REL_TYPE_REG
+                ? (float[]) getFields()[MSM_REG_CONDOM_USAGE_ADJ]
+                : (float[]) getFields()[MSM_CAS_CONDOM_USAGE_ADJ];
+
+        for (int a = 0; a < res.length; a++) {
+            if (hasActed[a]) {
+                switch (a) {
+                    case ACT_KISSING:
+                    case ACT_RIMMING:
+                        res[a][0] = true;
+                        break;
+                    case ACT_ANAL:
+                    case ACT_ORAL:
+                        float probCondomUse = rel.getType() == RegCasRelationship.REL_TYPE_REG
+                                ? ((float[]) getFields()[MSM_POP_REG_CONDOM_USAGE])[a]
+                                : ((float[]) getFields()[MSM_POP_CAS_CONDOM_USAGE])[a];
+                        if (protectAdj != null && protectAdj.length > 0) {
+                            if (getGlobalTime() >= protectAdj[0]) {
+                                if (protectAdj[a + 1] >= 0) {
+                                    probCondomUse *= protectAdj[a + 1];
+                                } else {
+                                    probCondomUse = -protectAdj[a + 1];
+                                }
+                            }
+                        }
+
+                        boolean unprotectedAct = probCondomUse == 0;
+                        if (!unprotectedAct && probCondomUse < 1) {
+                            unprotectedAct = actRandomFloat(rel, person, a) > probCondomUse;
+                        }
+
+                        if (unprotectedAct) {
+                            int lastUnprotectedParam = a == ACT_ANAL
+                                    ? RelationshipPerson_MSM.PARAM_LAST_UNPROTECTED_ANAL_SEX_AT_AGE
+                                    : RelationshipPerson_MSM.PARAM_LAST_UNPROTECTED_ORAL_SEX_AT_AGE;
+                            for (RelationshipPerson_MSM p : person) {
+                                p.setIntParam(lastUnprotectedParam, (int) p.getAge());
+                            }
+                            res[a][0] = true;
+                        }
+                        break;
+                }
+            }
+        }
+        return res;
+    }
+
+
     public int[] relTotal = new int[2];
     public int[] relLen = new int[2];
 
@@ -1455,7 +2577,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             dur = Integer.MAX_VALUE;
             for (AbstractIndividualInterface pair1 : pair) {
                 RelationshipPerson_MSM person = (RelationshipPerson_MSM) pair1;
-                int numCasualPast6Months = ((Number) person.getParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_NUM_CASUAL_IN_LAST_6_MONTHS))).intValue();
+                int numCasualPast6Months = person.getIntParam(RelationshipPerson_MSM.PARAM_NUM_CASUAL_IN_LAST_6_MONTHS);
                 int maxCasual = person.getMaxPartners();
                 if (maxCasual > 0 && maxCasual > numCasualPast6Months) {
                     dur = Math.min(dur, 6 * 30 / (maxCasual - numCasualPast6Months));
@@ -1478,7 +2600,7 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             float[][] actFreqAlt = new float[actFreq.length - 1][2];
             for (AbstractIndividualInterface pair1 : pair) {
                 RelationshipPerson_MSM person = (RelationshipPerson_MSM) pair1;
-                int numCasualPast6Months = ((Number) person.getParameter(person.indexToParamName(RelationshipPerson_MSM.PARAM_NUM_CASUAL_IN_LAST_6_MONTHS))).intValue();
+                int numCasualPast6Months = person.getIntParam(RelationshipPerson_MSM.PARAM_NUM_CASUAL_IN_LAST_6_MONTHS);
                 for (int a = 0; a < actFreqAlt.length; a++) {
                     actFreqAlt[a][0] += actFreq[a + 1][(numCasualPast6Months <= actFreq[0][1]) ? 0 : 1] / 2;
                     actFreqAlt[a][1] = actFreqAlt[a][0];
@@ -1507,7 +2629,11 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             }
         }
 
-        rel = new RegCasRelationship(new Integer[]{pair[0].getId(), pair[1].getId()}, mapType, actFreq.length);
+        boolean useActSchedule = getFields()[MSM_USE_ACT_SCHEDULE] != null
+                && (Boolean) getFields()[MSM_USE_ACT_SCHEDULE];
+
+        rel = new RegCasRelationship_MSM(new Integer[]{pair[0].getId(), pair[1].getId()}, mapType, actFreq.length,
+                new int[]{getPopulationSlot(pair[0]), getPopulationSlot(pair[1])});
         rel.setDurations(Math.max((int) dur, 1)); // Relations of at least one day
 
         for (int a = 0; a < actFreq.length; a++) {
@@ -1533,7 +2659,14 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
                     }
                 }
             }
-            rel.setActSchedule(a, actFloat, getRNG());
+            if (useActSchedule && actFloat < 1) {
+                // Per day probability, scheduled by days until next act instead
+                ((RegCasRelationship_MSM) rel).scheduleAct(actFreq.length, a, actFloat,
+                        nextActInDays(actFloat, getRNG().nextDouble()));
+                rel.setActSchedule(a, 0, getRNG());
+            } else {
+                rel.setActSchedule(a, actFloat, getRNG());
+            }
         }
         for (AbstractIndividualInterface pair1 : pair) {
             if (!relMap.containsVertex(pair1.getId())) {
@@ -1551,7 +2684,10 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
             if (mapType == MAPPING_CAS) {
                 for (int p = 0; p < pair.length; p++) {
                     RelationshipPerson_MSM person = (RelationshipPerson_MSM) pair[p];
-                    person.addCasualPartner(pair[(p + 1) % 2]);
+                    if (person.addCasualPartner(pair[(p + 1) % 2])
+                            && person.isCasualRecordExpiryByPopulation() && casualRecordWheel != null) {
+                        casualRecordWheel.add(person, getGlobalTime() + RelationshipPerson_MSM.CASUAL_RECORD_DURATION);
+                    }
                 }
             }
         } else {
@@ -1642,21 +2778,55 @@ public class MSMPopulation extends AbstractRegCasRelMapPopulation {
     }
 
     protected void snapshotCount(AbstractIndividualInterface person) {
-        for (int i = 0; i < getIndivdualInfectionList(person).length; i++) {
+        snapshotCount(person, getNumInf(), snapshotCount);
+    }
+
+    private void snapshotCount(AbstractIndividualInterface person, int[] numInf, int[][] count) {
+        int numInfList = getIndivdualInfectionList(person).length;
+        for (int i = 0; i < numInfList; i++) {
             if (person.getInfectionStatus(i) != AbstractIndividualInterface.INFECT_S) {
-                getNumInf()[i]++;
+                numInf[i]++;
             }
         }
         if (getSnapshotClassifier() != null) {
+            StrainClassifier[] strainCf = getStrainClassifier();
+            int[] strainsAtSite = null;
             for (int i = 0; i < snapshotClassifier.length; i++) {
-                if (snapshotClassifier[i] != null && snapshotCount[i] != null) {
-                    int cI = snapshotClassifier[i].classifyPerson(person);
+                if (snapshotClassifier[i] != null && snapshotCount[i] != null && count[i] != null) {
+                    int cI;
+                    if (strainCf[i] != null && person instanceof MultiSiteMultiStrainPersonInterface) {
+                        if (strainsAtSite == null) {
+                            strainsAtSite = ((MultiSiteMultiStrainPersonInterface) person).getCurrentStrainsAtSite();
+                        }
+                        cI = strainCf[i].classifyStrains(strainsAtSite);
+                    } else {
+                        cI = snapshotClassifier[i].classifyPerson(person);
+                    }
                     if (cI >= 0) {
-                        snapshotCount[i][cI]++;
+                        count[i][cI]++;
                     }
                 }
             }
         }
     }
 
+    /**
+     * @return snapshot classifiers as StrainClassifier, with null entry for those which are not
+     */
+    private StrainClassifier[] getStrainClassifier() {
+        // Built before parallel chunks start (see advanceTimeStep), so that chunks only read it
+        if (strainClassifierSource != snapshotClassifier
+                || strainClassifier == null || strainClassifier.length != snapshotClassifier.length) {
+            StrainClassifier[] cf = new StrainClassifier[snapshotClassifier.length];
+            for (int i = 0; i < cf.length; i++) {
+                if (snapshotClassifier[i] instanceof StrainClassifier) {
+                    cf[i] = (StrainClassifier) snapshotClassifier[i];
+                }
+            }
+            strainClassifier = cf;
+            strainClassifierSource = snapshotClassifier;
+        }
+        return strainClassifier;
+    }
+
 }
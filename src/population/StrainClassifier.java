@@ -0,0 +1,22 @@
+package population;
+
+import util.PersonClassifier;
+
+/**
+ * PersonClassifier based only on current strains at site of a person, so that
+ * MSMPopulation can classify a person by all such classifiers from a single read
+ * of the strain array (see MSMPopulation.snapshotCount).
+ *
+ * <p>
+ * classifyStrains must give the same result as classifyPerson for persons
+ * implementing MultiSiteMultiStrainPersonInterface.</p>
+ */
+public interface StrainClassifier extends PersonClassifier {
+
+    /**
+     * @param strainsAtSite current strains at site of person, i.e. getCurrentStrainsAtSite()
+     * @return class index, or -1 if not classified
+     */
+    public int classifyStrains(int[] strainsAtSite);
+
+}
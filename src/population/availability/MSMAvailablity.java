@@ -1,6 +1,7 @@
 package population.availability;
 
 import availability.AbstractAvailability;
+import java.util.Arrays;
 import person.AbstractIndividualInterface;
 import random.RandomGenerator;
 
@@ -16,6 +17,8 @@ public class MSMAvailablity extends AbstractAvailability {
 	private static final long serialVersionUID = 475269122305141031L;
 	protected AbstractIndividualInterface[][] available;    
     protected AbstractIndividualInterface[][] pairing = null;             
+    // Rows of pairing from previous days, reused for pairing of the same or smaller size
+    protected transient AbstractIndividualInterface[][] pairingRowPool = null;
     
     public MSMAvailablity(RandomGenerator RNG) {
         super(RNG);        
@@ -27,7 +30,7 @@ public class MSMAvailablity extends AbstractAvailability {
         int numPairing = numAvailable/2;   
         
         util.ArrayUtilsRandomGenerator.shuffleArray(available[0], getRNG());        
-        pairing = new AbstractIndividualInterface[numPairing][2];
+        newPairing(numPairing);
         
         int r = 0, pt = 0;        
         while(r < numPairing){
@@ -39,6 +42,47 @@ public class MSMAvailablity extends AbstractAvailability {
         }                                       
         return numPairing;       
     }    
+
+    /**
+     * Set pairing to an array of numPairing rows, reusing the array and rows of
+     * previous pairing where possible. Pairing from previous call of
+     * generatePairing is no longer valid afterward.
+     *
+     * @param numPairing number of pairs
+     */
+    protected void newPairing(int numPairing) {
+        if (pairingRowPool == null || pairingRowPool.length < numPairing) {
+            int oldLength = pairingRowPool == null ? 0 : pairingRowPool.length;
+            pairingRowPool = pairingRowPool == null
+                    ? new AbstractIndividualInterface[numPairing][]
+                    : Arrays.copyOf(pairingRowPool, Math.max(numPairing, oldLength * 2));
+            for (int r = oldLength; r < pairingRowPool.length; r++) {
+                pairingRowPool[r] = new AbstractIndividualInterface[2];
+            }
+        }
+        if (pairing == null || pairing.length != numPairing) {
+            pairing = new AbstractIndividualInterface[numPairing][];
+            System.arraycopy(pairingRowPool, 0, pairing, 0, numPairing);
+        }
+    }
+
+    /**
+     * @return number of pairs from last call of generatePairing
+     */
+    public int getNumPairing() {
+        return pairing == null ? 0 : pairing.length;
+    }
+
+    /**
+     * Primitive view of pairing, without going through getPairing()
+     *
+     * @param r index of pair
+     * @param k 0 or 1
+     * @return the k-th person of the r-th pair
+     */
+    public AbstractIndividualInterface getPairedPerson(int r, int k) {
+        return pairing[r][k];
+    }
   
 
     @Override
@@ -46,6 +90,13 @@ public class MSMAvailablity extends AbstractAvailability {
        this.available = available;
     }
     
+    /**
+     * Pairing from last call of generatePairing. The array and its rows are reused by
+     * the next call of generatePairing, so a result held from an earlier call is
+     * overwritten and should be copied if needed afterward.
+     *
+     * @return pairing from last call of generatePairing
+     */
     @Override
     public AbstractIndividualInterface[][] getPairing() {
         return pairing;
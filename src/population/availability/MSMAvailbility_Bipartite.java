@@ -1,6 +1,5 @@
 package population.availability;
 
-import java.util.Arrays;
 import person.AbstractIndividualInterface;
 import random.RandomGenerator;
 
@@ -16,6 +15,8 @@ public class MSMAvailbility_Bipartite extends MSMAvailablity {
 	 * 
 	 */
 	private static final long serialVersionUID = 3215241863364959117L;
+    // Partition of previous day, reused if of the same size
+    private transient AbstractIndividualInterface[][] bipartBuffer = null;
 
 	public MSMAvailbility_Bipartite(RandomGenerator RNG) {
         super(RNG);
@@ -24,17 +25,31 @@ public class MSMAvailbility_Bipartite extends MSMAvailablity {
     // Bipartite by "gender"
     @Override
     public void setAvailablePopulation(AbstractIndividualInterface[][] available) {
-        AbstractIndividualInterface[][] bipart = new AbstractIndividualInterface[2][available[0].length];
+        int numEven = 0;
+        for (AbstractIndividualInterface item : available[0]) {
+            if (item.getId() % 2 == 0) {
+                numEven++;
+            }
+        }
+        int numOdd = available[0].length - numEven;
+
+        if (bipartBuffer == null) {
+            bipartBuffer = new AbstractIndividualInterface[2][];
+        }
+        if (bipartBuffer[0] == null || bipartBuffer[0].length != numEven) {
+            bipartBuffer[0] = new AbstractIndividualInterface[numEven];
+        }
+        if (bipartBuffer[1] == null || bipartBuffer[1].length != numOdd) {
+            bipartBuffer[1] = new AbstractIndividualInterface[numOdd];
+        }
+
         int[] counter = new int[2];
         for (AbstractIndividualInterface item : available[0]) {
             int gI = (item.getId() % 2 == 0) ? 0 : 1;
-            bipart[gI][counter[gI]] = item;
+            bipartBuffer[gI][counter[gI]] = item;
             counter[gI]++;
         }
-        for (int i = 0; i < bipart.length; i++) {
-            bipart[i] = Arrays.copyOf(bipart[i], counter[i]);
-        }
-        super.setAvailablePopulation(bipart);
+        super.setAvailablePopulation(bipartBuffer);
     }
 
     @Override
@@ -48,7 +63,7 @@ public class MSMAvailbility_Bipartite extends MSMAvailablity {
             }
         }
 
-        pairing = new AbstractIndividualInterface[numPairing][2];
+        newPairing(numPairing);
 
         for (int p = 0; p < numPairing; p++) {
             pairing[p][0] = available[0][p];
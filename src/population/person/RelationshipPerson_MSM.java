@@ -1,6 +1,9 @@
 package population.person;
 
 import infection.AbstractInfection;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import person.AbstractIndividualInterface;
@@ -47,9 +50,23 @@ public class RelationshipPerson_MSM extends RelationshipPerson {
     public static final int PARAM_LAST_SCREEN_AT_AGE = PARAM_LAST_UNPROTECTED_ORAL_SEX_AT_AGE + 1;
     public static final int PARAM_SCHEDULED_SCREEN_AT_AGE = PARAM_LAST_SCREEN_AT_AGE + 1;
     
-    protected int[] param = new int[PARA_NANE.length];
-    // Casual encounter record 
-    protected int[] casualRecord = new int[6 * 30];
+    protected int[] param;
+    // If attached, param is held by column store instead
+    protected RelationshipPerson_MSM_ColumnStore columnStore = null;
+    // Index of this person in population's getPop(), or -1 if not assigned
+    protected int populationSlot = -1;
+    // Casual encounter record, as a queue of partner id and the casualRecordTime it expires at.
+    // At most one record per day, with array sized to number of records.
+    public static final int CASUAL_RECORD_DURATION = 6 * 30;
+    protected int[] casualRecordId = null;
+    protected int[] casualRecordExpiry = null;
+    protected int casualRecordHead = 0;
+    protected int casualRecordSize = 0;
+    protected int casualRecordTime = 0;
+    // If true, expiry of casual record is handled by population instead (see expireCasualRecord)
+    protected boolean casualRecordExpiryByPopulation = false;
+    // Ring buffer format of casual record from previous version, only used for import 
+    protected int[] casualRecord = null;
     protected int casualRecordIndex = 0;
     // Logger
     private static final Logger LOG = Logger.getLogger(RelationshipPerson_MSM.class.getName());
@@ -57,33 +74,262 @@ public class RelationshipPerson_MSM extends RelationshipPerson {
     public RelationshipPerson_MSM(int id, boolean isMale, double age, int numInf) {
         super(id, isMale, age);
         this.initalisedInfections(numInf);  // 3 sites                
+        param = new int[PARA_NANE.length];
     }
 
-    public void addCasualPartner(AbstractIndividualInterface p) {
-        casualRecord[casualRecordIndex] = p.getId();       
-        param[PARAM_NUM_CASUAL_IN_LAST_6_MONTHS-RelationshipPerson.LENGTH_PARAM_TOTAL]++;
+    /**
+     * Create a person in place of one who has left the population (e.g. aged out),
+     * taking over its MSM specific buffers instead of allocating new ones (see resetMSMState).
+     *
+     * @param id id of new person
+     * @param isMale gender of new person
+     * @param age age of new person
+     * @param numInf number of infection
+     * @param released person who has left the population
+     */
+    public RelationshipPerson_MSM(int id, boolean isMale, double age, int numInf, RelationshipPerson_MSM released) {
+        super(id, isMale, age);
+        this.initalisedInfections(numInf);
+        resetMSMState(released);
+    }
+
+    /**
+     * Reset the MSM specific state of this person to that of a new person, taking over
+     * the parameter buffer (or column store slot), and casual record buffer of a person
+     * who has left the population. Parameters are all zero and the casual record is
+     * empty afterward.
+     *
+     * <p>
+     * The released person is left without parameters and with an empty casual record,
+     * so stale entries of it in the casual record wheel of population are no-ops. It can
+     * still be used as a key (e.g. by id) for removal from population, but not for its
+     * parameters.</p>
+     *
+     * @param released person who has left the population
+     */
+    public void resetMSMState(RelationshipPerson_MSM released) {
+        if (released.columnStore != null) {
+            columnStore = released.columnStore;
+            populationSlot = released.populationSlot;
+            columnStore.clearSlot(populationSlot);
+            param = null;
+        } else {
+            param = released.param != null ? released.param : new int[PARA_NANE.length];
+            Arrays.fill(param, 0);
+            columnStore = null;
+        }
+        casualRecordId = released.casualRecordId;
+        casualRecordExpiry = released.casualRecordExpiry;
+        casualRecordHead = 0;
+        casualRecordSize = 0;
+        casualRecordTime = 0;
+        casualRecordExpiryByPopulation = false;
+        casualRecord = null;
+        casualRecordIndex = 0;
+
+        released.param = null;
+        released.columnStore = null;
+        released.casualRecordId = null;
+        released.casualRecordExpiry = null;
+        released.casualRecordHead = 0;
+        released.casualRecordSize = 0;
+    }
+
+    /**
+     * Add a casual partner to record.
+     *
+     * @param p casual partner
+     * @return true if a new record is added, or false if it replaced the one added on the same day
+     */
+    public boolean addCasualPartner(AbstractIndividualInterface p) {
+        boolean newRecord;
+        int expiry = casualRecordTime + CASUAL_RECORD_DURATION;
+        if (casualRecordSize > 0
+                && casualRecordExpiry[(casualRecordHead + casualRecordSize - 1) % casualRecordId.length] == expiry) {
+            // Same day as last record - replace it
+            casualRecordId[(casualRecordHead + casualRecordSize - 1) % casualRecordId.length] = p.getId();
+            newRecord = false;
+        } else {
+            addCasualRecord(p.getId(), expiry);
+            newRecord = true;
+        }
+        int offset = PARAM_NUM_CASUAL_IN_LAST_6_MONTHS - RelationshipPerson.LENGTH_PARAM_TOTAL;
+        setParamByOffset(offset, getParamByOffset(offset) + 1);
+        return newRecord;
+    }
+
+    public boolean isCasualRecordExpiryByPopulation() {
+        return casualRecordExpiryByPopulation;
+    }
+
+    public void setCasualRecordExpiryByPopulation(boolean casualRecordExpiryByPopulation) {
+        this.casualRecordExpiryByPopulation = casualRecordExpiryByPopulation;
+    }
+
+    /**
+     * Remove the earliest casual record, for use when expiry is handled by population.
+     */
+    public void expireCasualRecord() {
+        if (casualRecordSize > 0) {
+            int offset = PARAM_NUM_CASUAL_IN_LAST_6_MONTHS - RelationshipPerson.LENGTH_PARAM_TOTAL;
+            setParamByOffset(offset, getParamByOffset(offset) - 1);
+            casualRecordHead = (casualRecordHead + 1) % casualRecordCapacity();
+            casualRecordSize--;
+        }
+    }
+
+    /**
+     * @param i index of casual record, from the earliest
+     * @return number of calls of incrementTime (for deltaT = 1) before the record expires
+     */
+    public int getCasualRecordExpiryIn(int i) {
+        return casualRecordExpiry[(casualRecordHead + i) % casualRecordExpiry.length] - casualRecordTime;
+    }
+
+    /**
+     * Move the MSM specific parameters of this person to a slot of column store.
+     * Current parameter values are copied into the slot.
+     *
+     * @param store column store for the population
+     * @param slot slot of this person in the population
+     */
+    public void attachColumnStore(RelationshipPerson_MSM_ColumnStore store, int slot) {
+        for (int i = 0; i < PARA_NANE.length; i++) {
+            store.setParamByOffset(i, slot, getParamByOffset(i));
+        }
+        columnStore = store;
+        populationSlot = slot;
+        param = null;
+    }
+
+    /**
+     * Take a copy of parameters from column store, e.g. before the slot is
+     * reused by another person.
+     */
+    public void detachColumnStore() {
+        if (columnStore != null) {
+            param = new int[PARA_NANE.length];
+            for (int i = 0; i < PARA_NANE.length; i++) {
+                param[i] = columnStore.getParamByOffset(i, populationSlot);
+            }
+            columnStore = null;
+        }
+    }
+
+    public RelationshipPerson_MSM_ColumnStore getColumnStore() {
+        return columnStore;
+    }
+
+    public int getPopulationSlot() {
+        return populationSlot;
+    }
+
+    public void setPopulationSlot(int populationSlot) {
+        this.populationSlot = populationSlot;
+    }
+
+    protected int getParamByOffset(int offset) {
+        return columnStore == null ? param[offset] : columnStore.getParamByOffset(offset, populationSlot);
+    }
+
+    protected void setParamByOffset(int offset, int val) {
+        if (columnStore == null) {
+            param[offset] = val;
+        } else {
+            columnStore.setParamByOffset(offset, populationSlot, val);
+        }
     }
 
     @Override
     public int incrementTime(int deltaT, AbstractInfection[] infectionList) {
         int res = super.incrementTime(deltaT, infectionList);
         for (int t = 0; t < deltaT; t++) {
-            casualRecordIndex = (casualRecordIndex + 1) % casualRecord.length;
-            if (casualRecord[casualRecordIndex] != 0) {
+            casualRecordTime++;
+            if (!casualRecordExpiryByPopulation && casualRecordSize > 0
+                    && casualRecordExpiry[casualRecordHead] == casualRecordTime) {
                 // Remove casual from record
-                param[PARAM_NUM_CASUAL_IN_LAST_6_MONTHS - RelationshipPerson.LENGTH_PARAM_TOTAL]--;
-                casualRecord[casualRecordIndex] = 0;
+                expireCasualRecord();
             }
         }
         return res;
     }
 
+    private int casualRecordCapacity() {
+        return casualRecordId == null ? 0 : casualRecordId.length;
+    }
+
+    private void addCasualRecord(int partnerId, int expiry) {
+        if (casualRecordSize == casualRecordCapacity()) {
+            int newCapacity = Math.max(2, casualRecordSize * 2);
+            int[] newId = new int[newCapacity];
+            int[] newExpiry = new int[newCapacity];
+            for (int i = 0; i < casualRecordSize; i++) {
+                newId[i] = casualRecordId[(casualRecordHead + i) % casualRecordId.length];
+                newExpiry[i] = casualRecordExpiry[(casualRecordHead + i) % casualRecordId.length];
+            }
+            casualRecordId = newId;
+            casualRecordExpiry = newExpiry;
+            casualRecordHead = 0;
+        }
+        int tail = (casualRecordHead + casualRecordSize) % casualRecordId.length;
+        casualRecordId[tail] = partnerId;
+        casualRecordExpiry[tail] = expiry;
+        casualRecordSize++;
+    }
+
+    /**
+     * @return number of casual partners recorded within the last CASUAL_RECORD_DURATION days
+     */
+    public int getNumCasualInRecord() {
+        return casualRecordSize;
+    }
+
+    /**
+     * Index based access to parameter, without the name lookup and boxing of
+     * getParameter(String).
+     *
+     * <p>
+     * Only PARAM_* of this class and RelationshipPerson.PARAM_MAX_PARTNER are accessed directly.
+     * Other parameters inherited from RelationshipPerson still go through getParameter(String),
+     * and are not used in the simulation loop.</p>
+     *
+     * @param paramIndex one of PARAM_*, including those inherited from RelationshipPerson
+     * @return parameter value
+     */
+    public int getIntParam(int paramIndex) {
+        if (paramIndex >= RelationshipPerson.LENGTH_PARAM_TOTAL) {
+            return getParamByOffset(paramIndex - RelationshipPerson.LENGTH_PARAM_TOTAL);
+        } else if (paramIndex == RelationshipPerson.PARAM_MAX_PARTNER) {
+            return getMaxPartners();
+        } else {
+            return ((Number) super.getParameter(super.indexToParamName(paramIndex))).intValue();
+        }
+    }
+
+    /**
+     * Index based counterpart of setParameter(String, Comparable). As with getIntParam,
+     * inherited parameters other than PARAM_MAX_PARTNER go through setParameter(String, Comparable).
+     *
+     * @param paramIndex one of PARAM_*, including those inherited from RelationshipPerson
+     * @param val new value
+     */
+    @SuppressWarnings("unchecked")
+    public void setIntParam(int paramIndex, int val) {
+        if (paramIndex >= RelationshipPerson.LENGTH_PARAM_TOTAL) {
+            setParamByOffset(paramIndex - RelationshipPerson.LENGTH_PARAM_TOTAL, val);
+        } else if (paramIndex == RelationshipPerson.PARAM_MAX_PARTNER) {
+            setMaxPartners(val);
+        } else {
+            super.setParameter(super.indexToParamName(paramIndex), val);
+        }
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
     public Comparable getParameter(String id) {
         for (int i = 0; i < PARA_NANE.length; i++) {
             if (PARA_NANE[i].equals(id)) {
-                return param[i];
+                return getParamByOffset(i);
             }
         }
         return super.getParameter(id);
@@ -97,7 +343,7 @@ public class RelationshipPerson_MSM extends RelationshipPerson {
             if (PARA_NANE[i].equals(id)) {
                 //ret = param[i];
                 try {
-                    param[i] = ((Number) val).intValue();
+                    setParamByOffset(i, ((Number) val).intValue());
                 } catch (ClassCastException ex) {
                     LOG.log(Level.WARNING,
                             "Parameter [" + val.toString() + "] cannot be cast to fit " + PARA_NANE[i] + "'s type",
@@ -119,13 +365,61 @@ public class RelationshipPerson_MSM extends RelationshipPerson {
 
     }
 
+    /**
+     * Casual record in ring buffer format as before, i.e. an array of length CASUAL_RECORD_DURATION
+     * where entry at (casualRecordIndex + d) % CASUAL_RECORD_DURATION is the id of casual partner
+     * whose record expires in d days, or 0 if none. Unlike previous version, the array
+     * returned is a copy and changes to it are not reflected in the record (see setCasualRecord).
+     *
+     * @return casual record in ring buffer format
+     */
     public int[] getCasualRecord() {
-        return casualRecord;
-    }    
+        int[] res = new int[CASUAL_RECORD_DURATION];
+        for (int i = 0; i < casualRecordSize; i++) {
+            int d = getCasualRecordExpiryIn(i);
+            res[(casualRecordIndex + d) % res.length] = casualRecordId[(casualRecordHead + i) % casualRecordId.length];
+        }
+        return res;
+    }
+
+    /**
+     * @return id of casual partners within the last CASUAL_RECORD_DURATION days, from the earliest
+     */
+    public int[] getCasualPartnerIds() {
+        int[] res = new int[casualRecordSize];
+        for (int i = 0; i < casualRecordSize; i++) {
+            res[i] = casualRecordId[(casualRecordHead + i) % casualRecordId.length];
+        }
+        return res;
+    }
 
+    /**
+     * Set casual record from ring buffer format, where entry at
+     * (casualRecordIndex + d) % casualRecord.length expires in d days.
+     *
+     * @param casualRecord casual record in ring buffer format
+     */
     public void setCasualRecord(int[] casualRecord) {
-        this.casualRecord = casualRecord;
-    }    
+        casualRecordId = null;
+        casualRecordExpiry = null;
+        casualRecordHead = 0;
+        casualRecordSize = 0;
+        for (int d = 1; d <= casualRecord.length; d++) {
+            int partnerId = casualRecord[(casualRecordIndex + d) % casualRecord.length];
+            if (partnerId != 0) {
+                addCasualRecord(partnerId, casualRecordTime + d);
+            }
+        }
+        this.casualRecord = null;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (casualRecord != null) {
+            // Exported from previous version
+            setCasualRecord(casualRecord);
+        }
+    }
     
     
 }
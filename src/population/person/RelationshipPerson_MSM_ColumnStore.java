@@ -0,0 +1,59 @@
+package population.person;
+
+import java.io.Serializable;
+
+/**
+ * Column based (structure of arrays) storage for the MSM specific parameters of
+ * RelationshipPerson_MSM, indexed by population slot.
+ *
+ * <p>
+ * A person attached to a store reads and writes its PARAM_* values through the
+ * store, so the AbstractIndividualInterface view of the person is unchanged
+ * while the population loop can iterate each parameter as a flat int[].</p>
+ *
+ * <p>
+ * Only the MSM PARAM_* values are held here. Age, infection status, strains,
+ * timers and casual records stay in the person objects, as they are owned by
+ * the base person classes. The daily person loop of MSMPopulation reads the
+ * PARAM_BEHAV_TYPE_INDEX column directly.</p>
+ */
+public class RelationshipPerson_MSM_ColumnStore implements Serializable {
+
+    private static final long serialVersionUID = -2790441254604379437L;
+
+    // paramColumns[PARAM_* - RelationshipPerson.LENGTH_PARAM_TOTAL][slot]
+    private final int[][] paramColumns;
+
+    public RelationshipPerson_MSM_ColumnStore(int numSlot) {
+        paramColumns = new int[RelationshipPerson_MSM.PARA_NANE.length][numSlot];
+    }
+
+    public int getNumSlot() {
+        return paramColumns[0].length;
+    }
+
+    /**
+     * Direct access to the column of a parameter.
+     *
+     * @param paramIndex one of RelationshipPerson_MSM.PARAM_*
+     * @return column of parameter value, indexed by slot
+     */
+    public int[] getParamColumn(int paramIndex) {
+        return paramColumns[paramIndex - RelationshipPerson.LENGTH_PARAM_TOTAL];
+    }
+
+    int getParamByOffset(int offset, int slot) {
+        return paramColumns[offset][slot];
+    }
+
+    void setParamByOffset(int offset, int slot, int val) {
+        paramColumns[offset][slot] = val;
+    }
+
+    public void clearSlot(int slot) {
+        for (int[] col : paramColumns) {
+            col[slot] = 0;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package population.relationshipMap;
+
+import java.util.Arrays;
+
+/**
+ * RegCasRelationship with primitive id and population slot of its links, so that
+ * partners can be resolved by an array read of population.
+ *
+ * <p>
+ * Slot references are hints only. A slot is valid if the person in that slot
+ * still has the link id, as slots are reused when persons age out.</p>
+ */
+public class RegCasRelationship_MSM extends RegCasRelationship {
+
+    private static final long serialVersionUID = 4471953268110367208L;
+
+    private final int[] linkIds;
+    private final int[] linkSlots;
+
+    public static final int ACT_NOT_SCHEDULED = -1;
+    // Per day probability and days until next act by act type, if acts are scheduled by
+    // population (see MSMPopulation.MSM_USE_ACT_SCHEDULE), or null otherwise.
+    // Acts with ACT_NOT_SCHEDULED days are scheduled by RegCasRelationship instead.
+    private float[] actProbPerDay = null;
+    private int[] daysToNextAct = null;
+    // Result of acts processed in batch by population (see MSMPopulation.MSM_ACT_NUM_THREAD), for batchActDay
+    private transient boolean[][] batchActResult = null;
+    private transient int batchActDay;
+
+    /**
+     * @param links id of persons in relationship
+     * @param type REL_TYPE_REG or REL_TYPE_CAS
+     * @param numActType number of act types
+     * @param linkSlots population slot of persons in relationship, or -1 if unknown
+     */
+    public RegCasRelationship_MSM(Integer[] links, int type, int numActType, int[] linkSlots) {
+        super(links, type, numActType);
+        this.linkIds = new int[links.length];
+        for (int i = 0; i < links.length; i++) {
+            linkIds[i] = links[i];
+        }
+        this.linkSlots = linkSlots;
+    }
+
+    public int getLinkId(int linkIndex) {
+        return linkIds[linkIndex];
+    }
+
+    public int getLinkSlot(int linkIndex) {
+        return linkSlots[linkIndex];
+    }
+
+    /**
+     * Schedule an act by days until next act, instead of through setActSchedule of
+     * RegCasRelationship.
+     *
+     * @param numActType number of act types
+     * @param act act type
+     * @param probPerDay probability of act per day
+     * @param daysToNext days until next act, from 1
+     */
+    public void scheduleAct(int numActType, int act, float probPerDay, int daysToNext) {
+        if (daysToNextAct == null) {
+            actProbPerDay = new float[numActType];
+            daysToNextAct = new int[numActType];
+            Arrays.fill(daysToNextAct, ACT_NOT_SCHEDULED);
+        }
+        actProbPerDay[act] = probPerDay;
+        daysToNextAct[act] = daysToNext;
+    }
+
+    /**
+     * @return days until next act by act type (ACT_NOT_SCHEDULED if not scheduled by
+     * scheduleAct), or null if no act is scheduled by scheduleAct
+     */
+    public int[] getDaysToNextAct() {
+        return daysToNextAct;
+    }
+
+    /**
+     * @return probability of act per day by act type, for acts scheduled by scheduleAct
+     */
+    public float[] getActProbPerDay() {
+        return actProbPerDay;
+    }
+
+    /**
+     * Record result of acts of the day processed in batch by population.
+     *
+     * @param day day of acts
+     * @param res result of acts (cleared if no act occurred), which is copied
+     */
+    public void setBatchActResult(int day, boolean[][] res) {
+        if (batchActResult == null || batchActResult.length != res.length) {
+            batchActResult = new boolean[res.length][];
+        }
+        for (int a = 0; a < res.length; a++) {
+            if (batchActResult[a] == null || batchActResult[a].length != res[a].length) {
+                batchActResult[a] = new boolean[res[a].length];
+            }
+            System.arraycopy(res[a], 0, batchActResult[a], 0, res[a].length);
+        }
+        batchActDay = day;
+    }
+
+    /**
+     * @param day day of acts
+     * @return result of acts processed in batch for the day, or null if acts of the day
+     * were not processed in batch
+     */
+    public boolean[][] getBatchActResult(int day) {
+        return batchActResult != null && batchActDay == day ? batchActResult : null;
+    }
+
+}
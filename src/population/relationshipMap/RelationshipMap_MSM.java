@@ -0,0 +1,278 @@
+package population.relationshipMap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import person.AbstractIndividualInterface;
+import relationship.RelationshipMap;
+import relationship.SingleRelationship;
+
+/**
+ * RelationshipMap with a primitive adjacency index by person id, for vertex
+ * and degree queries without boxing or hashing.
+ *
+ * <p>
+ * Edges of each vertex are held in small inline arrays (in order of addition),
+ * which are returned to a free list when the vertex is removed. The index is
+ * built on construction and when the map is deserialised (as it is not serialised),
+ * and then kept in sync by overriding every mutator of the map (addVertex, both
+ * addEdge, both removeEdge and removeVertex). The bulk removeAll methods of the map
+ * go through removeEdge and removeVertex.</p>
+ *
+ * <p>
+ * As the index is never built lazily, vertex and degree queries (containsVertex,
+ * degreeOf, getDegree and getEdge) only read it, and can be called from several threads
+ * at once as long as no thread modifies the map at the same time.</p>
+ *
+ * <p>
+ * The index is held in addition to the JGraphT storage of RelationshipMap, so heap
+ * per edge is higher than RelationshipMap. It is used for faster vertex and degree
+ * queries, not for lower memory usage.</p>
+ */
+public class RelationshipMap_MSM extends RelationshipMap {
+
+    private static final long serialVersionUID = -6093325780426101746L;
+
+    private static final int NOT_VERTEX = -1;
+    private static final int INIT_EDGE_ARR_LENGTH = 2;
+
+    // degreeById[id] = degree of vertex, or NOT_VERTEX. Null only while the map is being deserialised
+    private transient int[] degreeById = null;
+    private transient SingleRelationship[][] edgesById = null;
+    private transient int numVertex = 0;
+    private transient int numEdge = 0;
+
+    private transient SingleRelationship[][] freeEdgeArr = null;
+    private transient int numFreeEdgeArr = 0;
+
+    public RelationshipMap_MSM() {
+        super();
+        rebuildIndex();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        int maxId = 0;
+        for (Integer v : vertexSet()) {
+            maxId = Math.max(maxId, v);
+        }
+        degreeById = new int[maxId + 1];
+        Arrays.fill(degreeById, NOT_VERTEX);
+        edgesById = new SingleRelationship[maxId + 1][];
+        numVertex = 0;
+        numEdge = 0;
+        freeEdgeArr = new SingleRelationship[16][];
+        numFreeEdgeArr = 0;
+
+        for (Integer v : vertexSet()) {
+            indexAddVertex(v);
+        }
+        for (SingleRelationship e : edgeSet()) {
+            indexAddEdge(e);
+        }
+    }
+
+    /**
+     * Build index if not built already. The index is built on construction and deserialisation,
+     * so this is only a safeguard before the map is queried from several threads.
+     */
+    public void ensureIndex() {
+        if (degreeById == null) {
+            rebuildIndex();
+        }
+    }
+
+    public boolean containsVertex(int id) {
+        return id >= 0 && id < degreeById.length && degreeById[id] != NOT_VERTEX;
+    }
+
+    /**
+     * @param id person id
+     * @return degree of vertex, or 0 if not a vertex
+     */
+    public int getDegree(int id) {
+        return containsVertex(id) ? degreeById[id] : 0;
+    }
+
+    /**
+     * @param id person id, must be a vertex
+     * @param i index of edge, from 0 to getDegree(id) - 1
+     * @return the i-th edge of vertex, in order of addition
+     */
+    public SingleRelationship getEdge(int id, int i) {
+        return edgesById[id][i];
+    }
+
+    @Override
+    public boolean containsVertex(Integer v) {
+        return containsVertex(v.intValue());
+    }
+
+    @Override
+    public int degreeOf(Integer v) {
+        if (!containsVertex(v.intValue())) {
+            return super.degreeOf(v);
+        }
+        return degreeById[v];
+    }
+
+    @Override
+    public boolean addVertex(Integer v) {
+        boolean added = super.addVertex(v);
+        if (added && degreeById != null) {
+            indexAddVertex(v);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean addEdge(Integer a, Integer b, SingleRelationship e) {
+        boolean added = super.addEdge(a, b, e);
+        if (added && degreeById != null) {
+            indexAddEdge(e);
+        }
+        return added;
+    }
+
+    @Override
+    public SingleRelationship addEdge(Integer a, Integer b) {
+        SingleRelationship e = super.addEdge(a, b);
+        if (e != null && degreeById != null) {
+            indexAddEdge(e);
+        }
+        return e;
+    }
+
+    @Override
+    public SingleRelationship removeEdge(Integer a, Integer b) {
+        SingleRelationship e = super.removeEdge(a, b);
+        if (e != null && degreeById != null) {
+            indexRemoveEdge(e);
+        }
+        return e;
+    }
+
+    @Override
+    public boolean removeEdge(SingleRelationship e) {
+        boolean removed = super.removeEdge(e);
+        if (removed && degreeById != null) {
+            indexRemoveEdge(e);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeVertex(Integer v) {
+        boolean removed = super.removeVertex(v);
+        if (removed && degreeById != null) {
+            indexRemoveVertex(v);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeVertex(AbstractIndividualInterface p) {
+        boolean removed = super.removeVertex(p);
+        if (removed && degreeById != null) {
+            indexRemoveVertex(p.getId());
+        }
+        return removed;
+    }
+
+    /**
+     * Remove a batch of persons (and their edges) from this map, skipping those
+     * who are not vertices of it.
+     *
+     * @param persons persons to be removed, e.g. aged out
+     * @param numPerson number of entries in persons to be removed
+     * @return number of vertices removed
+     */
+    public int removeVertices(AbstractIndividualInterface[] persons, int numPerson) {
+        int numRemoved = 0;
+        for (int i = 0; i < numPerson; i++) {
+            if (containsVertex(persons[i].getId()) && removeVertex(persons[i])) {
+                numRemoved++;
+            }
+        }
+        return numRemoved;
+    }
+
+    private void indexAddVertex(int id) {
+        if (id >= degreeById.length) {
+            int oldLength = degreeById.length;
+            int newLength = Math.max(id + 1, oldLength * 2);
+            degreeById = Arrays.copyOf(degreeById, newLength);
+            Arrays.fill(degreeById, oldLength, newLength, NOT_VERTEX);
+            edgesById = Arrays.copyOf(edgesById, newLength);
+        }
+        if (degreeById[id] == NOT_VERTEX) {
+            degreeById[id] = 0;
+            if (numFreeEdgeArr > 0) {
+                numFreeEdgeArr--;
+                edgesById[id] = freeEdgeArr[numFreeEdgeArr];
+                freeEdgeArr[numFreeEdgeArr] = null;
+            } else {
+                edgesById[id] = new SingleRelationship[INIT_EDGE_ARR_LENGTH];
+            }
+            numVertex++;
+        }
+    }
+
+    private void indexAddEdge(SingleRelationship e) {
+        Integer[] links = e.getLinks();
+        for (Integer link : links) {
+            int id = link;
+            indexAddVertex(id);
+            if (degreeById[id] == edgesById[id].length) {
+                edgesById[id] = Arrays.copyOf(edgesById[id], degreeById[id] * 2);
+            }
+            edgesById[id][degreeById[id]] = e;
+            degreeById[id]++;
+        }
+        numEdge++;
+    }
+
+    private void indexRemoveEdge(SingleRelationship e) {
+        boolean found = false;
+        for (Integer link : e.getLinks()) {
+            int id = link;
+            if (id < degreeById.length && degreeById[id] != NOT_VERTEX) {
+                SingleRelationship[] edges = edgesById[id];
+                for (int i = 0; i < degreeById[id]; i++) {
+                    if (edges[i] == e) {
+                        System.arraycopy(edges, i + 1, edges, i, degreeById[id] - i - 1);
+                        degreeById[id]--;
+                        edges[degreeById[id]] = null;
+                        found = true;
+                        break;
+                    }
+                }
+            }
+        }
+        if (found) {
+            numEdge--;
+        }
+    }
+
+    private void indexRemoveVertex(int id) {
+        if (id < degreeById.length && degreeById[id] != NOT_VERTEX) {
+            // Edges not already removed through removeEdge
+            while (degreeById[id] > 0) {
+                indexRemoveEdge(edgesById[id][degreeById[id] - 1]);
+            }
+            if (numFreeEdgeArr == freeEdgeArr.length) {
+                freeEdgeArr = Arrays.copyOf(freeEdgeArr, numFreeEdgeArr * 2);
+            }
+            freeEdgeArr[numFreeEdgeArr] = edgesById[id];
+            numFreeEdgeArr++;
+            edgesById[id] = null;
+            degreeById[id] = NOT_VERTEX;
+            numVertex--;
+        }
+    }
+
+}
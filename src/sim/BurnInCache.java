@@ -0,0 +1,183 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import population.AbstractRegCasRelMapPopulation;
+
+/**
+ * Local content-addressed cache of burned-in populations, shared between runs
+ * (e.g. folders of Simulation_MSM_Population_BatchRun, or residual evaluations during optimisation).
+ *
+ * <p>
+ * Key is the SHA-256 hash of population class, seed, population size, burn-in length, any extra
+ * setting that affects burn-in, the POP_PROP_INIT_PREFIX_ values used to initialise the population
+ * and the model input fields, i.e. those holding plain values (numbers, booleans, strings and arrays
+ * of them). Other fields (e.g. persons, relationship maps, availability, RNG and infection objects)
+ * are derived from the above during initialise, so only their class is hashed. This keeps key
+ * generation cheap and independent of the serialisation order of object graphs.
+ * Fields that are known not to affect burn-in can be left out of the key, in which case their current
+ * values are kept when a cached population is restored.</p>
+ *
+ * <p>
+ * Burned-in population is stored as gzipped exportPop output, and written to a temporary
+ * file first so that a partially written entry is never read.</p>
+ */
+public class BurnInCache {
+
+    public static final String CACHE_FILE_PREFIX = "burnIn_";
+    public static final String CACHE_FILE_SUFFIX = ".obj.gz";
+
+    private final File cacheDir;
+
+    public BurnInCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * @param pop population before burn-in
+     * @param burnIn length of burn-in
+     * @param ignoredFields index of fields left out of key, or null if none
+     * @param modelInit POP_PROP_INIT_PREFIX_ values by field index used to initialise population, or null if none
+     * @param extra extra setting that affects burn-in (e.g. strain coexist matrix), or null if none
+     * @return key of burned-in population
+     * @throws IOException
+     */
+    public String generateKey(AbstractRegCasRelMapPopulation pop, int burnIn, int[] ignoredFields,
+            String[] modelInit, Object extra) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+
+        Object[] fields = Arrays.copyOf(pop.getFields(), pop.getFields().length);
+        String[] init = modelInit == null ? new String[0] : Arrays.copyOf(modelInit, modelInit.length);
+        if (ignoredFields != null) {
+            for (int f : ignoredFields) {
+                fields[f] = null;
+                if (f < init.length) {
+                    init[f] = null;
+                }
+            }
+        }
+        for (int f = 0; f < fields.length; f++) {
+            if (!isModelInput(fields[f])) {
+                fields[f] = fields[f].getClass().getName();
+            }
+        }
+
+        try (ObjectOutputStream objOut = new ObjectOutputStream(new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // Digest only
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // Digest only
+            }
+        }, digest))) {
+            objOut.writeObject(pop.getClass().getName());
+            objOut.writeLong(pop.getSeed());
+            objOut.writeInt(pop.getPop() == null ? 0 : pop.getPop().length);
+            objOut.writeInt(burnIn);
+            objOut.writeObject(ignoredFields);
+            objOut.writeObject(extra);
+            objOut.writeObject(init);
+            objOut.writeObject(fields);
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return true if val is null, a number, boolean, string or character, or an array of them
+     */
+    private static boolean isModelInput(Object val) {
+        if (val == null || val instanceof Number || val instanceof Boolean
+                || val instanceof String || val instanceof Character) {
+            return true;
+        }
+        if (val.getClass().isArray()) {
+            if (val.getClass().getComponentType().isPrimitive()) {
+                return true;
+            }
+            for (Object ent : (Object[]) val) {
+                if (!isModelInput(ent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param key key of burned-in population
+     * @return fields of burned-in population, or null if not in cache
+     */
+    public Object[] load(String key) {
+        File cacheFile = new File(cacheDir, CACHE_FILE_PREFIX + key + CACHE_FILE_SUFFIX);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream objIn = new ObjectInputStream(
+                new GZIPInputStream(new BufferedInputStream(new FileInputStream(cacheFile))))) {
+            return (Object[]) objIn.readObject();
+        } catch (IOException | ClassNotFoundException ex) {
+            System.err.println("Error in reading burn-in cache " + cacheFile.getAbsolutePath());
+            ex.printStackTrace(System.err);
+            return null;
+        }
+    }
+
+    /**
+     * @param key key of population before burn-in
+     * @param pop burned-in population
+     */
+    public void store(String key, AbstractRegCasRelMapPopulation pop) {
+        File cacheFile = new File(cacheDir, CACHE_FILE_PREFIX + key + CACHE_FILE_SUFFIX);
+        File tempFile = null;
+        try {
+            cacheDir.mkdirs();
+            tempFile = File.createTempFile(CACHE_FILE_PREFIX + key, ".tmp", cacheDir);
+            try (ObjectOutputStream objOut = new ObjectOutputStream(
+                    new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+                pop.exportPop(objOut);
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("Error in storing burn-in cache " + cacheFile.getAbsolutePath());
+            ex.printStackTrace(System.err);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Bounded prefetch of import population files (i.e. pop_N.zip), where fields of
+ * upcoming sims are read on IO threads while earlier sims run.
+ *
+ * <p>
+ * Fields are deserialised directly from the zip stream, without unzipping to a temporary file.
+ * At most maxHeld field sets are read (or being read) but not yet taken at any time.
+ * Sims are expected to be taken in order of sim id.</p>
+ */
+public class ImportPopPrefetcher {
+
+    private final File[] impPopFiles;
+    private final ExecutorService ioExecutor;
+    private final Future<Object[]>[] pending;
+    private final int maxHeld;
+    private boolean[] noPrefetch = null;
+    private int nextToSubmit = 0;
+    private int numHeld = 0;
+
+    /**
+     * @param impPopFiles import population file by sim id (null if not used)
+     * @param numThread number of IO thread, or 0 if fields are read only when taken
+     * @param maxHeld maximum number of field sets read but not yet taken
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ImportPopPrefetcher(File[] impPopFiles, int numThread, int maxHeld) {
+        this.impPopFiles = impPopFiles;
+        this.ioExecutor = numThread > 0 ? Executors.newFixedThreadPool(numThread) : null;
+        this.pending = new Future[impPopFiles.length];
+        this.maxHeld = Math.max(maxHeld, 1);
+    }
+
+    /**
+     * @param noPrefetch sims to be read only when taken (e.g. with fields pre-extracted already), or null if none
+     */
+    public void setNoPrefetch(boolean[] noPrefetch) {
+        this.noPrefetch = noPrefetch;
+    }
+
+    /**
+     * Submit reading of import populations from simId onward, up to the memory budget.
+     *
+     * @param simId first sim id to prefetch
+     */
+    public void prefetchFrom(int simId) {
+        if (ioExecutor == null) {
+            return;
+        }
+        nextToSubmit = Math.max(nextToSubmit, simId);
+        while (nextToSubmit < impPopFiles.length && numHeld < maxHeld) {
+            if (impPopFiles[nextToSubmit] != null && pending[nextToSubmit] == null
+                    && (noPrefetch == null || !noPrefetch[nextToSubmit])) {
+                final File zipFile = impPopFiles[nextToSubmit];
+                pending[nextToSubmit] = ioExecutor.submit(new Callable<Object[]>() {
+                    @Override
+                    public Object[] call() throws Exception {
+                        return readFields(zipFile);
+                    }
+                });
+                numHeld++;
+            }
+            nextToSubmit++;
+        }
+    }
+
+    /**
+     * Fields of import population of a sim, waiting for it to be read if needed.
+     *
+     * @param simId sim id
+     * @return fields, or null if not available (e.g. error in reading)
+     */
+    public Object[] take(int simId) {
+        if (impPopFiles[simId] == null) {
+            return null;
+        }
+        try {
+            if (pending[simId] != null) {
+                Future<Object[]> f = pending[simId];
+                pending[simId] = null;
+                numHeld--;
+                return f.get();
+            } else {
+                System.out.println("Reading import pop from " + impPopFiles[simId].getAbsolutePath());
+                return readFields(impPopFiles[simId]);
+            }
+        } catch (IOException | ClassNotFoundException | InterruptedException | ExecutionException ex) {
+            StringWriter str = new StringWriter();
+            try (PrintWriter wri = new PrintWriter(str)) {
+                ex.printStackTrace(wri);
+            }
+            System.err.println(str.toString());
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        if (ioExecutor != null) {
+            ioExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read fields from an exported population zip file, as generated by SinglePopRunnable.
+     *
+     * @param zipFile zip file with population exported as its first entry
+     * @return fields of population
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Object[] readFields(File zipFile) throws IOException, ClassNotFoundException {
+        try (ZipInputStream zIn = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile)))) {
+            if (zIn.getNextEntry() == null) {
+                throw new IOException("No entry found in " + zipFile.getAbsolutePath());
+            }
+            ObjectInputStream objIn = new ObjectInputStream(new BufferedInputStream(zIn));
+            return (Object[]) objIn.readObject();
+        }
+    }
+
+}
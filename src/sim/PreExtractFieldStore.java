@@ -0,0 +1,169 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded store of pre-extracted population fields by sim id, replacing the
+ * Object[numSim][] used previously so that heap usage does not grow with the number of sims.
+ *
+ * <p>
+ * At most maxInMemory field sets are held in memory. As sims are taken in order of sim id,
+ * the entry with the largest sim id (i.e. the one needed last) is evicted first, rather than
+ * the least recently used one, which would be the one needed next. Evicted
+ * entries are spilled to spillDir as gzipped object streams, or to a temporary directory
+ * (removed by clear) if spillDir is not set. Entries are never dropped - if an entry cannot be
+ * spilled it is kept in memory instead. Entries are released once taken. Not thread safe.</p>
+ */
+public class PreExtractFieldStore {
+
+    public static final String SPILL_FILE_PREFIX = "preExtract_";
+
+    private final TreeMap<Integer, Object[]> inMemory = new TreeMap<>();
+    private final TreeMap<Integer, File> spilled = new TreeMap<>();
+    private int maxInMemory;
+    private File spillDir;
+    private File tempSpillDir = null;
+
+    /**
+     * @param maxInMemory maximum number of field sets held in memory
+     * @param spillDir directory for evicted entries, or null if a temporary directory is used
+     */
+    public PreExtractFieldStore(int maxInMemory, File spillDir) {
+        this.maxInMemory = Math.max(maxInMemory, 1);
+        this.spillDir = spillDir;
+    }
+
+    public void setMaxInMemory(int maxInMemory) {
+        this.maxInMemory = Math.max(maxInMemory, 1);
+        evict();
+    }
+
+    public void setSpillDir(File spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    public boolean contains(int simId) {
+        return inMemory.containsKey(simId) || spilled.containsKey(simId);
+    }
+
+    public void put(int simId, Object[] fields) {
+        if (fields == null) {
+            return;
+        }
+        removeSpill(simId);
+        inMemory.put(simId, fields);
+        evict();
+    }
+
+    /**
+     * Remove and return fields of a sim.
+     *
+     * @param simId sim id
+     * @return fields, or null if not in store (or if spilled entry cannot be read)
+     */
+    public Object[] take(int simId) {
+        Object[] fields = inMemory.remove(simId);
+        if (fields == null) {
+            File spillFile = spilled.get(simId);
+            if (spillFile != null) {
+                try (ObjectInputStream objIn = new ObjectInputStream(
+                        new GZIPInputStream(new BufferedInputStream(new FileInputStream(spillFile))))) {
+                    fields = (Object[]) objIn.readObject();
+                } catch (IOException | ClassNotFoundException ex) {
+                    ex.printStackTrace(System.err);
+                }
+            }
+        }
+        removeSpill(simId);
+        return fields;
+    }
+
+    /**
+     * @param length length of array
+     * @return entries held in memory as an array by sim id (spilled entries are not loaded)
+     */
+    public Object[][] toArray(int length) {
+        Object[][] res = new Object[length][];
+        for (Map.Entry<Integer, Object[]> ent : inMemory.headMap(length).entrySet()) {
+            res[ent.getKey()] = ent.getValue();
+        }
+        return res;
+    }
+
+    public void clear() {
+        inMemory.clear();
+        while (!spilled.isEmpty()) {
+            removeSpill(spilled.firstKey());
+        }
+        if (tempSpillDir != null) {
+            File[] remaining = tempSpillDir.listFiles();
+            if (remaining != null) {
+                for (File f : remaining) {
+                    f.delete();
+                }
+            }
+            if (!tempSpillDir.delete()) {
+                System.err.println("Temporary directory " + tempSpillDir.getAbsolutePath()
+                        + " for pre extracted fields cannot be removed");
+            }
+            tempSpillDir = null;
+        }
+    }
+
+    private void evict() {
+        while (inMemory.size() > maxInMemory) {
+            Map.Entry<Integer, Object[]> last = inMemory.lastEntry();
+            File spillFile = null;
+            try {
+                File dir = getSpillDir();
+                spillFile = new File(dir, SPILL_FILE_PREFIX + last.getKey() + ".obj.gz");
+                try (ObjectOutputStream objOut = new ObjectOutputStream(
+                        new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile))))) {
+                    objOut.writeObject(last.getValue());
+                }
+                spilled.put(last.getKey(), spillFile);
+                inMemory.remove(last.getKey());
+            } catch (IOException ex) {
+                System.err.println("Pre extracted fields for Thread #" + last.getKey()
+                        + " cannot be spilled and are kept in memory");
+                ex.printStackTrace(System.err);
+                if (spillFile != null) {
+                    spillFile.delete();
+                }
+                return;
+            }
+        }
+    }
+
+    private File getSpillDir() throws IOException {
+        if (spillDir != null) {
+            spillDir.mkdirs();
+            return spillDir;
+        }
+        if (tempSpillDir == null) {
+            tempSpillDir = Files.createTempDirectory(SPILL_FILE_PREFIX).toFile();
+            tempSpillDir.deleteOnExit();
+        }
+        return tempSpillDir;
+    }
+
+    private void removeSpill(int simId) {
+        File spillFile = spilled.remove(simId);
+        if (spillFile != null) {
+            spillFile.delete();
+        }
+    }
+
+}
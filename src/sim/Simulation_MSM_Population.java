@@ -2,20 +2,21 @@ package sim;
 
 import java.beans.PropertyChangeSupport;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -24,6 +25,7 @@ import java.util.Iterator;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -34,6 +36,7 @@ import org.apache.commons.math3.distribution.PoissonDistribution;
 import person.AbstractIndividualInterface;
 import population.AbstractRegCasRelMapPopulation;
 import population.MSMPopulation;
+import population.StrainClassifier;
 import population.person.MultiSiteMultiStrainPersonInterface;
 import population.person.RelationshipPerson_MSM;
 import random.RandomGenerator;
@@ -42,7 +45,6 @@ import util.AppendableObjOutstream;
 import util.FileZipper;
 import util.PersonClassifier;
 import util.StaticMethods;
-import util.runnable.ExtractFieldRunnable;
 
 /**
  *
@@ -124,6 +126,11 @@ public class Simulation_MSM_Population implements SimulationInterface {
     public static final int FILE_STRAIN_COMPOSITION_ACTIVE_RANGE = FILE_NEW_STRAIN_HAS_REG_PARTNERS + 1;
     public static final int FILE_VACCINATE_STAT = FILE_STRAIN_COMPOSITION_ACTIVE_RANGE + 1;
 
+    // Commit index of results, with record of {sim id, length of each of FILE_NAMES_OBJ,
+    // length of FILE_END_NUM_INF_PERSON_CSV, length of FILE_STRAIN_COMPOSITION_ACTIVE_RANGE}
+    public static final String FILE_RESULT_COMMIT = "resultCommit.idx";
+    private static final int RESULT_COMMIT_RECORD_LENGTH = 4 + 8 * (FILE_NAMES_OBJ.length + 2);
+
     public static final String[] DIR_NAMES = {"output", "newStrainSpread"};
     public static final int DIR_NAMES_OUTPUT = 0;
     public static final int DIR_NEW_STRAIN_SPREAD = DIR_NAMES_OUTPUT + 1;
@@ -142,9 +149,28 @@ public class Simulation_MSM_Population implements SimulationInterface {
     protected PropertyChangeSupport progressSupport = null;
     // Number progress to use
     private int maxThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
-    // Prextract 
-    private Object[][] preExtractField = null;
+    // Prextract, with at most preExtractFieldLimit (or number of threads if 0) field sets held in memory
+    private PreExtractFieldStore preExtractStore = null;
+    private int preExtractFieldLimit = 0;
+    private File preExtractSpillDir = null;
     private boolean useImportIOThread = true;
+    // Maximum number of import pop read ahead, or 0 to use number of threads
+    private int importPrefetchLimit = 0;
+
+    // Scheduling of sims in generateOneResultSet
+    private static final int SIM_SCHEDULE_WINDOW_FACTOR = 4;
+    private static final byte SIM_STATE_SKIPPED = 1;
+    private static final byte SIM_STATE_RUNNING = 2;
+    private static final byte SIM_STATE_DONE = 3;
+    // Failed without results, e.g. sim threw an Error. Later results are still written in order
+    private static final byte SIM_STATE_FAILED = 4;
+
+    // Result streams, kept open across sims by openResultStreams
+    private ObjectOutputStream[] resultObjS = null;
+    private PrintWriter resultPri_numInfectPerson = null;
+    private PrintWriter resultPri_strainCompositionStat = null;
+    private DataOutputStream resultCommitIndex = null;
+    private volatile boolean resultWriteFailed = false;
 
     public final static Pattern PATTERN_IMPORT_FILE = Pattern.compile("pop_(\\d+).zip");
     public final static Pattern PATTERN_POP_STAT = Pattern.compile(SinglePopRunnable.EXPORT_INDIV_PREFIX + "(\\d+).csv(.zip)?");
@@ -154,6 +180,20 @@ public class Simulation_MSM_Population implements SimulationInterface {
 
     public final static String FLAG_NO_REMOVAL = "-noFileRemoval";
     public final static String FLAG_CLEAR_PREVIOUS_RESULTS = "-clearPrevResult";
+    public final static String FLAG_BURN_IN_CACHE = "-burnInCache="; // e.g. -burnInCache=path_to_cache_dir
+
+    /**
+     * @param flags extra flags
+     * @return burn-in cache set by FLAG_BURN_IN_CACHE, or null if not set
+     */
+    public static BurnInCache getBurnInCacheFromFlags(String flags) {
+        int pt = flags == null ? -1 : flags.indexOf(FLAG_BURN_IN_CACHE);
+        if (pt < 0) {
+            return null;
+        }
+        String path = flags.substring(pt + FLAG_BURN_IN_CACHE.length()).split("\\s+")[0];
+        return path.isEmpty() ? null : new BurnInCache(new File(path));
+    }
 
     public String getSimExtraFlags() {
         return simExtraFlags;
@@ -175,6 +215,10 @@ public class Simulation_MSM_Population implements SimulationInterface {
         this.useImportIOThread = useImportIOThread;
     }
 
+    public void setImportPrefetchLimit(int importPrefetchLimit) {
+        this.importPrefetchLimit = importPrefetchLimit;
+    }
+
     @Override
     public void loadProperties(Properties prop) {
         for (int i = 0; i < PROP_NAME.length; i++) {
@@ -225,12 +269,44 @@ public class Simulation_MSM_Population implements SimulationInterface {
         return prop;
     }
 
+    /**
+     * @return pre extracted fields currently held in memory, by sim id (spilled fields are not included)
+     */
     public Object[][] getPreExtractField() {
-        return preExtractField;
+        return preExtractStore == null ? null
+                : preExtractStore.toArray(((Number) propVal[PROP_NUM_SIM_PER_SET]).intValue());
     }
 
+    /**
+     * Set pre extracted fields by sim id. Fields beyond preExtractFieldLimit are spilled to
+     * preExtractSpillDir (or a temporary directory if not set), so both should be set before calling this method.
+     *
+     * @param preExtractField fields by sim id (or null if not available)
+     */
     public void setPreExtractField(Object[][] preExtractField) {
-        this.preExtractField = preExtractField;
+        preExtractStore = null;
+        if (preExtractField != null) {
+            preExtractStore = new PreExtractFieldStore(getPreExtractFieldLimit(maxThreads), preExtractSpillDir);
+            for (int tI = 0; tI < preExtractField.length; tI++) {
+                preExtractStore.put(tI, preExtractField[tI]);
+            }
+        }
+    }
+
+    public void setPreExtractFieldLimit(int preExtractFieldLimit) {
+        this.preExtractFieldLimit = preExtractFieldLimit;
+    }
+
+    private int getPreExtractFieldLimit(int numProcess) {
+        return preExtractFieldLimit > 0 ? preExtractFieldLimit : numProcess;
+    }
+
+    /**
+     * @param preExtractSpillDir directory for pre extracted fields beyond preExtractFieldLimit,
+     * or null if a temporary directory is used
+     */
+    public void setPreExtractSpillDir(File preExtractSpillDir) {
+        this.preExtractSpillDir = preExtractSpillDir;
     }
 
     @Override
@@ -309,25 +385,21 @@ public class Simulation_MSM_Population implements SimulationInterface {
 
         // Prextract 
         if (usingImportPop) {
-            if (preExtractField != null) {
-                // Ensure the length of preExtractField matches with number of simulation runs
-                preExtractField = Arrays.copyOf(preExtractField, numSimTotal);
-
+            if (preExtractStore != null) {
+                preExtractStore.setSpillDir(preExtractSpillDir);
+                preExtractStore.setMaxInMemory(getPreExtractFieldLimit(numProcess));
             } else {
-                preExtractField = new Object[numSimTotal][];
+                preExtractStore = new PreExtractFieldStore(getPreExtractFieldLimit(numProcess), preExtractSpillDir);
             }
 
-            // Extract fields when required
+            // Import pop files, used for sims without pre extracted fields
             impDir = new File((String) propVal[PROP_POP_IMPORT_PATH]);
             impPopFiles = new File[numSimTotal];
 
-            for (int tI = 0; tI < preExtractField.length; tI++) {
-                if (preExtractField[tI] == null) {
-                    // Extract fields from file                    
-                    File zipFile = new File(impDir, SimulationInterface.POP_FILE_PREFIX + tI + ".zip");
-                    if (zipFile.exists()) {
-                        impPopFiles[tI] = zipFile;
-                    }
+            for (int tI = 0; tI < impPopFiles.length; tI++) {
+                File zipFile = new File(impDir, SimulationInterface.POP_FILE_PREFIX + tI + ".zip");
+                if (zipFile.exists()) {
+                    impPopFiles[tI] = zipFile;
                 }
             }
         }
@@ -335,8 +407,13 @@ public class Simulation_MSM_Population implements SimulationInterface {
         File preSnapFile = new File(baseDir, FILE_NAMES_OBJ[FILE_SNAPCOUNTS]);
 
         int simToSkip = 0;
-        if (preSnapFile.exists()) {
-
+        int lastCommitSimId = readResultCommit();
+        if (lastCommitSimId != Integer.MIN_VALUE) {
+            simToSkip = lastCommitSimId + 1;
+            System.out.println("Number of committed results in " + new File(baseDir, FILE_RESULT_COMMIT).getAbsolutePath()
+                    + " = " + simToSkip);
+        } else if (preSnapFile.exists()) {
+            // Results from previous version, without commit index
             ObjectInputStream inStr = new ObjectInputStream(new FileInputStream(preSnapFile));
 
             try {
@@ -364,18 +441,74 @@ public class Simulation_MSM_Population implements SimulationInterface {
 
         //System.out.println("7: " + propModelInit[7]);
         //System.out.println("8: " + propModelInit[8]);
-        while (simSoFar < numSimTotal && !stopNextTurn) {
-            int numThreads = Math.min(numProcess, numSimTotal - simSoFar);
-            if (threadCounter < simToSkip) {
+
+        // Continuous scheduling: next sim is submitted as soon as any finishes, and results
+        // are written in order of sim id as soon as all sims before them are written.
+        // Completed sims are released as soon as their results are extracted (see SimResult),
+        // and results are held until written, so sims started are limited to
+        // SIM_SCHEDULE_WINDOW_FACTOR * numProcess ahead of the next one to be written.
+        boolean useParallel = ((Integer) propVal[PROP_USE_PARALLEL]) != 0;
+        ExecutorService executor = null;
+        ExecutorCompletionService<SimResult> completionService = null;
+        if (useParallel) {
+            executor = Executors.newFixedThreadPool(numProcess);
+            completionService = new ExecutorCompletionService<>(executor);
+        }
+        SinglePopRunnable[] simRunnable = new SinglePopRunnable[numSimTotal];
+        SimResult[] simResult = new SimResult[numSimTotal];
+        PrintWriter[] simPriWri = new PrintWriter[numSimTotal];
+        byte[] simState = new byte[numSimTotal];
+        int numRunning = 0;
+        int writePt = 0;
+
+        File outputDirFile = new File(baseDir, DIR_NAMES[DIR_NAMES_OUTPUT]);
+        outputDirFile.mkdirs();
+
+        BurnInCache burnInCache = getBurnInCacheFromFlags(getSimExtraFlags());
+
+        // Import pops are read ahead while earlier sims run, except for those to be skipped
+        ImportPopPrefetcher importPrefetcher = null;
+        if (usingImportPop) {
+            for (int tI = 0; tI < impPopFiles.length; tI++) {
+                if (tI < simToSkip || (propVal[PROP_MSM_SKIP_THREAD_RANGE] != null
+                        && ((int[]) propVal[PROP_MSM_SKIP_THREAD_RANGE])[0] <= tI
+                        && ((int[]) propVal[PROP_MSM_SKIP_THREAD_RANGE])[1] >= tI)) {
+                    impPopFiles[tI] = null;
+                }
+            }
+            importPrefetcher = new ImportPopPrefetcher(impPopFiles,
+                    useParallel && useImportIOThread ? numProcess : 0,
+                    importPrefetchLimit > 0 ? importPrefetchLimit : numProcess);
+            // Pre extracted fields in store are not read ahead
+            boolean[] noPrefetch = new boolean[numSimTotal];
+            for (int tI = 0; tI < noPrefetch.length; tI++) {
+                noPrefetch[tI] = preExtractStore.contains(tI);
+            }
+            importPrefetcher.setNoPrefetch(noPrefetch);
+            importPrefetcher.prefetchFrom(simToSkip);
+        }
+
+        // Results are written by a dedicated thread, with each sim committed once written
+        openResultStreams(simToSkip - 1);
+        resultWriteFailed = false;
+        ExecutorService resultWriter = Executors.newSingleThreadExecutor();
+
+        while ((simSoFar < numSimTotal && !stopNextTurn) || numRunning > 0) {
+            boolean canSchedule = simSoFar < numSimTotal && !stopNextTurn
+                    && numRunning < numProcess
+                    && simSoFar - writePt < SIM_SCHEDULE_WINDOW_FACTOR * numProcess;
+
+            if (canSchedule && threadCounter < simToSkip) {
                 long skipSeed = rng.nextLong();
                 showStrStatus("Simulation #" + threadCounter + " with seed " + skipSeed
                         + " skipped as "
                         + simToSkip + " snapshot results already present at "
                         + preSnapFile.getAbsolutePath());
 
+                simState[threadCounter] = SIM_STATE_SKIPPED;
                 simSoFar++;
                 threadCounter++;
-            } else if (propVal[PROP_MSM_SKIP_THREAD_RANGE] != null
+            } else if (canSchedule && propVal[PROP_MSM_SKIP_THREAD_RANGE] != null
                     && ((int[]) propVal[PROP_MSM_SKIP_THREAD_RANGE])[0] <= threadCounter
                     && ((int[]) propVal[PROP_MSM_SKIP_THREAD_RANGE])[1] >= threadCounter) {
                 long skipSeed = rng.nextLong();
@@ -383,226 +516,235 @@ public class Simulation_MSM_Population implements SimulationInterface {
                         + " skipped as threadId within PROP_MSM_SKIP_THREAD_RANGE of "
                         + Arrays.toString((int[]) propVal[PROP_MSM_SKIP_THREAD_RANGE]));
 
+                simState[threadCounter] = SIM_STATE_SKIPPED;
                 simSoFar++;
                 threadCounter++;
 
-            } else {
-
-                ExecutorService executor;
-                SinglePopRunnable[] runnable = null;
-                PrintWriter[] priWri = null;
-                File outputDirFile = new File(baseDir, DIR_NAMES[DIR_NAMES_OUTPUT]);
-                outputDirFile.mkdirs();
-
-                if (usingImportPop) {
-                    File[] importPopFileSim = Arrays.copyOfRange(impPopFiles, simSoFar, simSoFar + numThreads);
-
-                    int importPopSoFar = 0;
-
-                    while (importPopSoFar < importPopFileSim.length) {
-
-                        // Extract field thread
-                        ExecutorService ioExecutor;
-                        ExtractFieldRunnable[] extThreads;
-                        java.util.concurrent.Future<Object[]>[] futureFields;
-                        File[] extractPopFilesSet = new File[importPopFileSim.length];
-
-                        futureFields = new java.util.concurrent.Future[importPopFileSim.length];
-                        ioExecutor = Executors.newFixedThreadPool(numProcess);
-                        extThreads = new ExtractFieldRunnable[Math.min(numThreads, importPopFileSim.length - importPopSoFar)];
-
-                        for (int tI = 0; tI < extThreads.length; tI++) {
-                            if (importPopFileSim[importPopSoFar + tI] != null) {
-                                extractPopFilesSet[tI] = util.FileZipper.unzipFile(importPopFileSim[importPopSoFar + tI], baseDir);
-                                extThreads[tI] = new ExtractFieldRunnable(extractPopFilesSet[tI]);
-                                if (numThreads > 1 && ((Integer) propVal[PROP_USE_PARALLEL]) != 0 && useImportIOThread) {
-                                    System.out.println("Submitting extThread from " + importPopFileSim[importPopSoFar + tI].getAbsolutePath());
-                                    futureFields[importPopSoFar + tI] = ioExecutor.submit(extThreads[tI]);
-                                } else {
-                                    System.out.println("Running extThread from " + importPopFileSim[importPopSoFar + tI].getAbsolutePath());
-                                    extThreads[tI].run();
-                                }
-                            }
-                        }
-                        ioExecutor.shutdown();
-
-                        try {
-                            if (!ioExecutor.awaitTermination(1, TimeUnit.DAYS)) {
-                                System.err.println("Thread time-out in extracting fields!");
-                            }
-                            for (int tI = 0; tI < extThreads.length; tI++) {
-                                if (extThreads[tI] != null) {
-                                    if (futureFields[importPopSoFar + tI] != null) {
-                                        preExtractField[simSoFar + importPopSoFar + tI] = futureFields[importPopSoFar + tI].get();
-                                    } else {
-                                        preExtractField[simSoFar + importPopSoFar + tI] = extThreads[tI].getExtFields();
-                                    }
-                                }
-                            }
-
-                        } catch (InterruptedException | ExecutionException ex) {
-                            StringWriter str = new StringWriter();
-                            try (PrintWriter wri = new PrintWriter(str)) {
-                                ex.printStackTrace(wri);
-                            }
-                            System.err.println(str.toString());
-                        }
-                        importPopSoFar += extThreads.length;
-
-                        for (File extractPopFile : extractPopFilesSet) {
-                            if (extractPopFile != null) {
-                                extractPopFile.delete();
-                            }
-                        }
-                    }
+            } else if (canSchedule) {
+                int r = threadCounter;
 
+                if (usingImportPop && !preExtractStore.contains(r) && impPopFiles[r] != null) {
+                    preExtractStore.put(r, importPrefetcher.take(r));
+                    // Read ahead for upcoming sims
+                    importPrefetcher.prefetchFrom(r + 1);
                 }
 
-                showStrStatus("Running S" + threadCounter + " to S" + (threadCounter + numThreads - 1) + "...");
+                showStrStatus("Running S" + threadCounter + "...");
 
-                if (runnable == null || runnable.length != numThreads) {
-                    runnable = new SinglePopRunnable[numThreads];
-                }
-                priWri = new PrintWriter[numThreads];
-
-                executor = Executors.newFixedThreadPool(numThreads);
-
-                for (int r = 0; r < runnable.length; r++) {
+                simRunnable[r] = new SinglePopRunnable(threadCounter,
+                        ((Number) propVal[PROP_NUM_SNAP]).intValue(), ((Number) propVal[PROP_SNAP_FREQ]).intValue());
 
-                    runnable[r] = new SinglePopRunnable(threadCounter,
-                            ((Number) propVal[PROP_NUM_SNAP]).intValue(), ((Number) propVal[PROP_SNAP_FREQ]).intValue());
-
-                    runnable[r].setBaseDir(baseDir);
+                simRunnable[r].setBaseDir(baseDir);
+                if (burnInCache != null) {
+                    simRunnable[r].setBurnInCache(burnInCache);
+                }
 
-                    // Set output 
-                    priWri[r] = new PrintWriter(new FileWriter(new File(outputDirFile, DIR_NAMES[DIR_NAMES_OUTPUT] + "_" + threadCounter + ".txt")));
+                // Set output 
+                simPriWri[r] = new PrintWriter(new FileWriter(new File(outputDirFile, DIR_NAMES[DIR_NAMES_OUTPUT] + "_" + threadCounter + ".txt")));
 
-                    final PrintWriter pri_Output = priWri[r];
-                    runnable[r].setProgressSupport(new PropertyChangeSupport(runnable) {
+                final PrintWriter pri_Output = simPriWri[r];
+                simRunnable[r].setProgressSupport(new PropertyChangeSupport(simRunnable[r]) {
 
-                        /**
-						 * 
-						 */
-						private static final long serialVersionUID = -4421160519625593382L;
+                    /**
+					 * 
+					 */
+					private static final long serialVersionUID = -4421160519625593382L;
 
-						@Override
-                        public void firePropertyChange(String key, Object notUsed, Object str) {
-                            if (SimulationInterface.PROGRESS_MSG.equals(key)) {
-                                pri_Output.println(str);
-                                pri_Output.flush();
-                                //System.out.println(str);
-                            }
+					@Override
+                    public void firePropertyChange(String key, Object notUsed, Object str) {
+                        if (SimulationInterface.PROGRESS_MSG.equals(key)) {
+                            pri_Output.println(str);
+                            pri_Output.flush();
+                            //System.out.println(str);
                         }
-
-                    });
-
-                    if (propVal[PROP_POP_EXPORT_AT] != null) {
-                        runnable[r].setExportBurnInPop((int[]) propVal[PROP_POP_EXPORT_AT]);
                     }
 
-                    if (propVal[PROP_STRAINS_INTRO_AT] != null) {
-                        // Generate strain intro file file                 
-                        float[][] allEnt = (float[][]) propVal[PROP_STRAINS_INTRO_AT];
-                        for (float[] ent : allEnt) {
-                            runnable[r].addStrainIntroEnt(ent);
-                        }
-                    }
+                });
 
-                    if (propVal[PROP_STRAINS_COEXIST_MAT] != null) {
-                        runnable[r].setCoexistMat((float[][]) propVal[PROP_STRAINS_COEXIST_MAT]);
-                    }
+                if (propVal[PROP_POP_EXPORT_AT] != null) {
+                    simRunnable[r].setExportBurnInPop((int[]) propVal[PROP_POP_EXPORT_AT]);
+                }
 
-                    if (propVal[PROP_MSM_VACCINE_SETTING] != null) {
-                        runnable[r].setVaccineSetting((double[][]) propVal[PROP_MSM_VACCINE_SETTING]);
+                if (propVal[PROP_STRAINS_INTRO_AT] != null) {
+                    // Generate strain intro file file                 
+                    float[][] allEnt = (float[][]) propVal[PROP_STRAINS_INTRO_AT];
+                    for (float[] ent : allEnt) {
+                        simRunnable[r].addStrainIntroEnt(ent);
                     }
+                }
 
-                    int numThread = ((Integer) propVal[PROP_USE_PARALLEL]);
+                if (propVal[PROP_STRAINS_COEXIST_MAT] != null) {
+                    simRunnable[r].setCoexistMat((float[][]) propVal[PROP_STRAINS_COEXIST_MAT]);
+                }
 
-                    runnable[r].setPrintPrevalenceAtFreq(numThread <= 1 ? 1 : 360);
+                if (propVal[PROP_MSM_VACCINE_SETTING] != null) {
+                    simRunnable[r].setVaccineSetting((double[][]) propVal[PROP_MSM_VACCINE_SETTING]);
+                }
 
-                    threadCounter++;
+                int numThread = ((Integer) propVal[PROP_USE_PARALLEL]);
 
-                    if (progressSupport != null) {
-                        runnable[r].setProgressSupport(progressSupport);
-                    }
+                simRunnable[r].setPrintPrevalenceAtFreq(numThread <= 1 ? 1 : 360);
 
-                    // New Pop                
-                    if (MSMPopulation.class.getName().equals(propVal[PROP_POP_TYPE])) {
-                        runnable[r].setPopulation(new MSMPopulation(rng.nextLong()));
-                        if (propVal[PROP_MSM_INIT_POP_SIZE] != null) {
-                            ((MSMPopulation) runnable[r].getPopulation()).setInitNumInPop((Integer) propVal[PROP_MSM_INIT_POP_SIZE]);
-                        }
+                threadCounter++;
 
-                    } else {
-                        throw new UnsupportedOperationException(getClass().getName()
-                                + ".generateOneResultSet: Population class "
-                                + propVal[PROP_POP_TYPE] + " not supported yet");
-                    }
+                if (progressSupport != null) {
+                    simRunnable[r].setProgressSupport(progressSupport);
+                }
 
-                    boolean useImport = false;
-                    if (propVal[PROP_POP_IMPORT_PATH] != null) {
-                        useImport = populationImport(runnable, r);
+                // New Pop                
+                if (MSMPopulation.class.getName().equals(propVal[PROP_POP_TYPE])) {
+                    simRunnable[r].setPopulation(new MSMPopulation(rng.nextLong()));
+                    if (propVal[PROP_MSM_INIT_POP_SIZE] != null) {
+                        ((MSMPopulation) simRunnable[r].getPopulation()).setInitNumInPop((Integer) propVal[PROP_MSM_INIT_POP_SIZE]);
                     }
 
-                    // Common snapshot count (if any)
-                    runnable[r].setSnapShotOutput(snapshotCountClassifier, snapshotCountAccum);
+                } else {
+                    throw new UnsupportedOperationException(getClass().getName()
+                            + ".generateOneResultSet: Population class "
+                            + propVal[PROP_POP_TYPE] + " not supported yet");
+                }
 
-                    if (!useImport) {
-                        System.out.println("Thread #" + (threadCounter - 1) + " generated with seed of " + runnable[r].getPopulation().getSeed());
+                boolean useImport = false;
+                if (propVal[PROP_POP_IMPORT_PATH] != null) {
+                    useImport = populationImport(simRunnable, r);
+                }
 
-                        runnable[r].model_prop_initialise(((Number) propVal[PROP_BURNIN]).intValue(), propModelInit);
+                // Common snapshot count (if any)
+                simRunnable[r].setSnapShotOutput(snapshotCountClassifier, snapshotCountAccum);
 
-                    }
-                    if (propVal[PROP_INFECTION_INTRO] != null) {
+                if (!useImport) {
+                    System.out.println("Thread #" + (threadCounter - 1) + " generated with seed of " + simRunnable[r].getPopulation().getSeed());
 
-                        float[][] preval_intro = (float[][]) propVal[PROP_INFECTION_INTRO];
+                    simRunnable[r].model_prop_initialise(((Number) propVal[PROP_BURNIN]).intValue(), propModelInit);
 
-                        for (int infId = 0; infId < preval_intro.length; infId++) {
-                            for (int t = 0; t < preval_intro[infId].length; t += 2) {
-                                runnable[r].setInfectionIntroAt((int) preval_intro[infId][t],
-                                        infId, preval_intro[infId][t + 1], init_expose[infId]);
-                            }
+                }
+                if (propVal[PROP_INFECTION_INTRO] != null) {
 
+                    float[][] preval_intro = (float[][]) propVal[PROP_INFECTION_INTRO];
+
+                    for (int infId = 0; infId < preval_intro.length; infId++) {
+                        for (int t = 0; t < preval_intro[infId].length; t += 2) {
+                            simRunnable[r].setInfectionIntroAt((int) preval_intro[infId][t],
+                                    infId, preval_intro[infId][t + 1], init_expose[infId]);
                         }
 
                     }
 
-                    if (eventPointers != null) {
-                        eventPointers[runnable[r].getId()] = runnable[r].getEventsPointer();
+                }
+
+                if (eventPointers != null) {
+                    eventPointers[simRunnable[r].getId()] = simRunnable[r].getEventsPointer();
+                }
+
+                if (getSimCustomParameterStr() != null) {
+                    if (getSimCustomParameterStr().contains("Survival_Analysis")) {
+                        simRunnable[r].set_patient_zero(true);
                     }
+                }
 
-                    if (getSimCustomParameterStr() != null) {
-                        if (getSimCustomParameterStr().contains("Survival_Analysis")) {
-                            runnable[r].set_patient_zero(true);
+                simSoFar++;
+                if (useParallel) {
+                    simState[r] = SIM_STATE_RUNNING;
+                    final SinglePopRunnable sim = simRunnable[r];
+                    simRunnable[r] = null;
+                    completionService.submit(new Callable<SimResult>() {
+                        @Override
+                        public SimResult call() {
+                            return runSim(sim);
                         }
+                    });
+                    numRunning++;
+                } else {
+                    SimResult result = runSim(simRunnable[r]);
+                    simRunnable[r] = null;
+                    simResult[r] = result.failed ? null : result;
+                    simState[r] = result.failed ? SIM_STATE_FAILED : SIM_STATE_DONE;
+                }
+            } else {
+                // Wait for any running sim to finish
+                try {
+                    Future<SimResult> done = completionService.poll(2, TimeUnit.DAYS);
+                    if (done == null) {
+                        showStrStatus("Thread time-out!");
+                        break;
                     }
-
-                    if (((Integer) propVal[PROP_USE_PARALLEL]) != 0) {
-                        executor.submit(runnable[r]);
-                    } else {
-                        runnable[r].run();
+                    SimResult result = done.get();
+                    simResult[result.id] = result.failed ? null : result;
+                    simState[result.id] = result.failed ? SIM_STATE_FAILED : SIM_STATE_DONE;
+                } catch (ExecutionException ex) {
+                    StringWriter str = new StringWriter();
+                    try (PrintWriter wri = new PrintWriter(str)) {
+                        ex.printStackTrace(wri);
                     }
+                    System.err.println(str.toString());
+                    // Not expected as runSim catches all, but id of failed sim is unknown,
+                    // so results after it cannot be written in order
+                    stopNextTurn = true;
                 }
+                numRunning--;
+            }
 
-                executor.shutdown();
-                if (!executor.awaitTermination(2, TimeUnit.DAYS)) {
-                    showStrStatus("Thread time-out!");
+            // Write results in order of sim id, up to the first sim not yet done
+            int writeEnd = writePt;
+            while (writeEnd < simSoFar
+                    && (simState[writeEnd] == SIM_STATE_DONE || simState[writeEnd] == SIM_STATE_SKIPPED
+                    || simState[writeEnd] == SIM_STATE_FAILED)) {
+                writeEnd++;
+            }
+            if (writeEnd > writePt) {
+                final SimResult[] toWrite = Arrays.copyOfRange(simResult, writePt, writeEnd);
+                final int writeFrom = writePt;
+                final int writeTo = writeEnd;
+                resultWriter.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (resultWriteFailed) {
+                            return;
+                        }
+                        try {
+                            for (SimResult result : toWrite) {
+                                if (result != null) {
+                                    writeResult(result);
+                                }
+                            }
+                        } catch (IOException | RuntimeException ex) {
+                            // Results after the last commit are discarded on resume
+                            ex.printStackTrace(System.err);
+                            resultWriteFailed = true;
+                            return;
+                        }
+                        if (progressSupport != null) {
+                            progressSupport.firePropertyChange(PROGRESS_SIM_STORED, writeFrom, writeTo);
+                        }
+                    }
+                });
+                if (resultWriteFailed) {
+                    stopNextTurn = true;
                 }
-
-                if (progressSupport != null) {
-                    progressSupport.firePropertyChange(PROGRESS_SIM_STORED, simSoFar, simSoFar + runnable.length);
+                for (int s = writePt; s < writeEnd; s++) {
+                    if (simPriWri[s] != null) {
+                        simPriWri[s].close();
+                        simPriWri[s] = null;
+                    }
+                    simResult[s] = null;
                 }
-                simSoFar += runnable.length;
-
-                genertateOutputFiles(runnable);
+                writePt = writeEnd;
+            }
+        }
 
-                for (PrintWriter wri : priWri) {
-                    wri.close();
-                }
+        if (executor != null) {
+            executor.shutdown();
+        }
 
-            }
+        if (importPrefetcher != null) {
+            importPrefetcher.shutdown();
+        }
 
+        resultWriter.shutdown();
+        if (!resultWriter.awaitTermination(2, TimeUnit.DAYS)) {
+            showStrStatus("Result writer time-out!");
         }
+        closeResultStreams();
 
         finalise(simSoFar);
 
@@ -699,88 +841,258 @@ public class Simulation_MSM_Population implements SimulationInterface {
 
     }
 
-    protected void genertateOutputFiles(SinglePopRunnable[] runnableCollection) throws IOException {
-        // Generating file
-        ObjectOutputStream[] objS;
+    /**
+     * Open result files for append, with commit index of results written so far.
+     *
+     * <p>
+     * Object streams and CSV files are kept open until closeResultStreams, with
+     * each sim committed by writeResult. If the commit index is not present
+     * (e.g. results from previous version), a commit of existing results is recorded
+     * as of sim lastSimId.</p>
+     *
+     * @param lastSimId id of last sim in existing results, or -1 if none
+     * @throws IOException
+     */
+    protected void openResultStreams(int lastSimId) throws IOException {
+        resultObjS = new ObjectOutputStream[FILE_NAMES_OBJ.length];
+        for (int i = 0; i < resultObjS.length; i++) {
+            resultObjS[i] = AppendableObjOutstream.generateFromFile(new File(baseDir, FILE_NAMES_OBJ[i]));
+        }
+        resultPri_numInfectPerson = new PrintWriter(new FileWriter(new File(baseDir, FILE_NAMES_CSV[FILE_END_NUM_INF_PERSON_CSV]), true));
+        resultPri_strainCompositionStat = new PrintWriter(new FileWriter(new File(baseDir, FILE_NAMES_CSV[FILE_STRAIN_COMPOSITION_ACTIVE_RANGE]), true));
+
+        File commitFile = new File(baseDir, FILE_RESULT_COMMIT);
+        boolean newIndex = !commitFile.exists() || commitFile.length() < RESULT_COMMIT_RECORD_LENGTH;
+        resultCommitIndex = new DataOutputStream(new FileOutputStream(commitFile, true));
+        if (newIndex) {
+            for (ObjectOutputStream objS1 : resultObjS) {
+                objS1.flush();
+            }
+            commitResult(lastSimId);
+        }
+    }
 
-        objS = new ObjectOutputStream[FILE_NAMES_OBJ.length];
+    /**
+     * Results of a completed sim used by writeResult, extracted when the sim completes
+     * so that the sim (and its population) can be released before its results are written.
+     */
+    protected static class SimResult {
+
+        // Selection of getNumberOfInfected
+        public static final int[] NUM_INFECTED_SEL = new int[]{-1, 0, 1, 2};
+
+        public final int id;
+        public final int[] numInf;
+        public final int[] extinctAt;
+        public final int[][][] snapCounts;
+        public final int[] eventsPointer;
+        public final int[][] incidentCounts;
+        public final int popSize;
+        public final int[] numInfected;
+        public final int[][] strainCompositionActiveRange;
+
+        // If true, sim failed and there is no result other than id
+        public final boolean failed;
+
+        public SimResult(SinglePopRunnable runnable) {
+            id = runnable.getId();
+            failed = false;
+            numInf = runnable.getPopulation().getNumInf();
+            extinctAt = runnable.getExtinctionAt();
+            snapCounts = runnable.getSnapCounts();
+            eventsPointer = runnable.getEventsPointer();
+            incidentCounts = runnable.getIncidentCounts();
+            popSize = runnable.getPopulation().getPop().length;
+            numInfected = runnable.getPopulation().getNumberOfInfected(NUM_INFECTED_SEL);
+            strainCompositionActiveRange = runnable.getStrainCompositionActiveRange();
+        }
+
+        /**
+         * Result of a failed sim.
+         *
+         * @param id id of sim
+         */
+        public SimResult(int id) {
+            this.id = id;
+            failed = true;
+            numInf = null;
+            extinctAt = null;
+            snapCounts = null;
+            eventsPointer = null;
+            incidentCounts = null;
+            popSize = 0;
+            numInfected = null;
+            strainCompositionActiveRange = null;
+        }
+    }
 
-        for (int i = 0; i < objS.length; i++) {
-            File f = new File(baseDir, FILE_NAMES_OBJ[i]);
-            if (f.exists()) {
-                Files.copy(f.toPath(), new File(baseDir, FILE_NAMES_OBJ[i] + "_pre").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Run a sim and collect its results. As before, results of a sim that throws a RuntimeException
+     * are still collected. If anything else fails (e.g. an Error, or results cannot be collected),
+     * a failed SimResult is returned so that the sim id is kept.
+     *
+     * @param sim sim to run
+     * @return results of sim
+     */
+    private static SimResult runSim(SinglePopRunnable sim) {
+        try {
+            try {
+                sim.run();
+            } catch (RuntimeException ex) {
+                // As before, results of sim are still written
+                ex.printStackTrace(System.err);
             }
-            objS[i] = AppendableObjOutstream.generateFromFile(f);
+            return new SimResult(sim);
+        } catch (Throwable ex) {
+            System.err.println("S" + sim.getId() + ": Simulation failed and its results are not written.");
+            ex.printStackTrace(System.err);
+            return new SimResult(sim.getId());
         }
+    }
 
-        PrintWriter pri_numInfectPerson = new PrintWriter(new FileWriter(new File(baseDir, FILE_NAMES_CSV[FILE_END_NUM_INF_PERSON_CSV]), true));
-        PrintWriter pri_strainCompositionStat = new PrintWriter(new FileWriter(new File(baseDir, FILE_NAMES_CSV[FILE_STRAIN_COMPOSITION_ACTIVE_RANGE]), true));
-
-        for (SinglePopRunnable runnable : runnableCollection) {
-            if (runnable != null) {
-                objS[FILE_END_NUM_INF].writeObject(runnable.getPopulation().getNumInf());
-                objS[FILE_END_NUM_INF].flush();
-                objS[FILE_EXTINCT_AT].writeObject(runnable.getExtinctionAt());
-                objS[FILE_EXTINCT_AT].flush();
-                if (objS[FILE_SNAPCOUNTS] != null) {
-                    int[][][] snapcount = runnable.getSnapCounts();
-                    objS[FILE_SNAPCOUNTS].writeObject(snapcount);
-                    objS[FILE_SNAPCOUNTS].flush();
-                    System.out.println("S" + runnable.getId() + "'s end snap = " + Arrays.deepToString(snapcount[snapcount.length - 1]));
+    /**
+     * Write results of a sim, and record it in commit index once all results are flushed.
+     *
+     * @param result results of sim
+     * @throws IOException
+     */
+    protected void writeResult(SimResult result) throws IOException {
+        resultObjS[FILE_END_NUM_INF].writeObject(result.numInf);
+        resultObjS[FILE_END_NUM_INF].flush();
+        resultObjS[FILE_EXTINCT_AT].writeObject(result.extinctAt);
+        resultObjS[FILE_EXTINCT_AT].flush();
+        if (resultObjS[FILE_SNAPCOUNTS] != null) {
+            int[][][] snapcount = result.snapCounts;
+            resultObjS[FILE_SNAPCOUNTS].writeObject(snapcount);
+            resultObjS[FILE_SNAPCOUNTS].flush();
+            System.out.println("S" + result.id + "'s end snap = " + Arrays.deepToString(snapcount[snapcount.length - 1]));
 
-                }
-                if (objS[FILE_EVENT_POINTER] != null) {
-                    objS[FILE_EVENT_POINTER].writeObject(runnable.getEventsPointer());
-                    objS[FILE_EVENT_POINTER].flush();
-                }
-                // PopSnapObj - Bug if there is more than one null in sim?
-                int[][] incidentBySnapCount = runnable.getIncidentCounts();
-                for (int i = 0; i < incidentBySnapCount.length; i++) {
-                    if (incidentBySnapCount[i] == null) {
-                        incidentBySnapCount[i] = new int[0];
-                    }
-                }
+        }
+        if (resultObjS[FILE_EVENT_POINTER] != null) {
+            resultObjS[FILE_EVENT_POINTER].writeObject(result.eventsPointer);
+            resultObjS[FILE_EVENT_POINTER].flush();
+        }
+        // PopSnapObj - Bug if there is more than one null in sim?
+        int[][] incidentBySnapCount = result.incidentCounts;
+        for (int i = 0; i < incidentBySnapCount.length; i++) {
+            if (incidentBySnapCount[i] == null) {
+                incidentBySnapCount[i] = new int[0];
+            }
+        }
 
-                objS[FILE_INCIDENT_COUNT].writeObject(incidentBySnapCount);
-                objS[FILE_INCIDENT_COUNT].flush();
+        resultObjS[FILE_INCIDENT_COUNT].writeObject(incidentBySnapCount);
+        resultObjS[FILE_INCIDENT_COUNT].flush();
 
-                // Number of infected person
-                int[] sel = new int[]{-1, 0, 1, 2};
-                int[] numInfected = runnable.getPopulation().getNumberOfInfected(sel);
+        // Number of infected person
+        int[] numInfected = result.numInfected;
 
-                pri_numInfectPerson.print(runnable.getId());
-                pri_numInfectPerson.print(',');
-                pri_numInfectPerson.print(runnable.getPopulation().getPop().length);
-                for (int i = 0; i < sel.length; i++) {
-                    pri_numInfectPerson.print(',');
-                    pri_numInfectPerson.print(numInfected[i]);
-                }
-                pri_numInfectPerson.println();
+        resultPri_numInfectPerson.print(result.id);
+        resultPri_numInfectPerson.print(',');
+        resultPri_numInfectPerson.print(result.popSize);
+        for (int i = 0; i < SimResult.NUM_INFECTED_SEL.length; i++) {
+            resultPri_numInfectPerson.print(',');
+            resultPri_numInfectPerson.print(numInfected[i]);
+        }
+        resultPri_numInfectPerson.println();
 
-                int[][] strainComStat = runnable.getStrainCompositionActiveRange();
-                pri_strainCompositionStat.print(runnable.getId());
+        int[][] strainComStat = result.strainCompositionActiveRange;
+        resultPri_strainCompositionStat.print(result.id);
 
-                for (int sC = 1; sC < strainComStat.length; sC++) {
-                    pri_strainCompositionStat.print(',');
-                    pri_strainCompositionStat.print(sC);
-                    for (int i = 0; i < strainComStat[sC].length; i++) {
-                        pri_strainCompositionStat.print(',');
-                        pri_strainCompositionStat.print(strainComStat[sC][i]);
-                    }
-                }
-                pri_strainCompositionStat.println();
+        for (int sC = 1; sC < strainComStat.length; sC++) {
+            resultPri_strainCompositionStat.print(',');
+            resultPri_strainCompositionStat.print(sC);
+            for (int i = 0; i < strainComStat[sC].length; i++) {
+                resultPri_strainCompositionStat.print(',');
+                resultPri_strainCompositionStat.print(strainComStat[sC][i]);
+            }
+        }
+        resultPri_strainCompositionStat.println();
 
+        // Streams are kept open across sims, so reset to release references to objects written
+        for (ObjectOutputStream objS1 : resultObjS) {
+            if (objS1 != null) {
+                objS1.reset();
+                objS1.flush();
             }
+        }
+        commitResult(result.id);
+    }
 
+    private void commitResult(int simId) throws IOException {
+        resultPri_numInfectPerson.flush();
+        resultPri_strainCompositionStat.flush();
+        resultCommitIndex.writeInt(simId);
+        for (File f : getCommittedResultFiles()) {
+            resultCommitIndex.writeLong(f.length());
         }
-        for (ObjectOutputStream objS1 : objS) {
+        resultCommitIndex.flush();
+    }
+
+    protected void closeResultStreams() throws IOException {
+        for (ObjectOutputStream objS1 : resultObjS) {
             if (objS1 != null) {
                 objS1.close();
             }
         }
-        pri_numInfectPerson.close();
-        pri_strainCompositionStat.close();
+        resultPri_numInfectPerson.close();
+        resultPri_strainCompositionStat.close();
+        resultCommitIndex.close();
+        resultObjS = null;
+        resultPri_numInfectPerson = null;
+        resultPri_strainCompositionStat = null;
+        resultCommitIndex = null;
+    }
+
+    /**
+     * @return result files with length recorded in commit index, in order of record
+     */
+    private File[] getCommittedResultFiles() {
+        File[] res = new File[FILE_NAMES_OBJ.length + 2];
+        for (int i = 0; i < FILE_NAMES_OBJ.length; i++) {
+            res[i] = new File(baseDir, FILE_NAMES_OBJ[i]);
+        }
+        res[FILE_NAMES_OBJ.length] = new File(baseDir, FILE_NAMES_CSV[FILE_END_NUM_INF_PERSON_CSV]);
+        res[FILE_NAMES_OBJ.length + 1] = new File(baseDir, FILE_NAMES_CSV[FILE_STRAIN_COMPOSITION_ACTIVE_RANGE]);
+        return res;
+    }
 
+    /**
+     * Read last commit from commit index, and truncate result files (and the index itself)
+     * to that commit, e.g. to remove partial results of sims written before a crash.
+     *
+     * @return id of last committed sim, or Integer.MIN_VALUE if commit index is not present
+     * @throws IOException
+     */
+    protected int readResultCommit() throws IOException {
+        File commitFile = new File(baseDir, FILE_RESULT_COMMIT);
+        long numRecord = commitFile.exists() ? commitFile.length() / RESULT_COMMIT_RECORD_LENGTH : 0;
+        if (numRecord == 0) {
+            return Integer.MIN_VALUE;
+        }
+        int lastSimId;
+        File[] resultFiles = getCommittedResultFiles();
+        long[] committedLength = new long[resultFiles.length];
+        try (RandomAccessFile index = new RandomAccessFile(commitFile, "rw")) {
+            index.seek((numRecord - 1) * RESULT_COMMIT_RECORD_LENGTH);
+            lastSimId = index.readInt();
+            for (int i = 0; i < committedLength.length; i++) {
+                committedLength[i] = index.readLong();
+            }
+            index.setLength(numRecord * RESULT_COMMIT_RECORD_LENGTH);
+        }
+        for (int i = 0; i < resultFiles.length; i++) {
+            if (resultFiles[i].length() > committedLength[i]) {
+                System.out.println("Truncating uncommitted results in " + resultFiles[i].getAbsolutePath()
+                        + " from " + resultFiles[i].length() + " to " + committedLength[i] + " bytes");
+                try (RandomAccessFile f = new RandomAccessFile(resultFiles[i], "rw")) {
+                    f.setLength(committedLength[i]);
+                }
+            } else if (resultFiles[i].length() < committedLength[i]) {
+                System.err.println("Warning: " + resultFiles[i].getAbsolutePath() + " is shorter than committed length of "
+                        + committedLength[i] + " bytes");
+            }
+        }
+        return lastSimId;
     }
 
     public void decodeSnapCountFile() throws FileNotFoundException, IOException, ClassNotFoundException {
@@ -1117,12 +1429,7 @@ public class Simulation_MSM_Population implements SimulationInterface {
 
                     for (AbstractIndividualInterface p : pop.getPop()) {
 
-                        int[] casualRec = ((RelationshipPerson_MSM) p).getCasualRecord();
-                        int numCasual = 0;
-
-                        for (int i = 0; i < casualRec.length; i++) {
-                            numCasual += (casualRec[i] != 0) ? 1 : 0;
-                        }
+                        int numCasual = ((RelationshipPerson_MSM) p).getNumCasualInRecord();
 
                         if (numCasual >= map_NumberCasual6Months.length) {
                             map_NumberCasual6Months = Arrays.copyOf(map_NumberCasual6Months, numCasual + 1);
@@ -1532,10 +1839,10 @@ public class Simulation_MSM_Population implements SimulationInterface {
     protected boolean populationImport(SinglePopRunnable[] runnable, int r) {
         File importResFile;
         boolean useImport = false;
-        if (preExtractField != null) {
-            if (runnable[r].getId() < preExtractField.length
-                    && preExtractField[runnable[r].getId()] != null) {
-                Object[] fields = preExtractField[runnable[r].getId()];
+        if (preExtractStore != null) {
+            // Fields are released from store, and held by population only
+            Object[] fields = preExtractStore.take(runnable[r].getId());
+            if (fields != null) {
                 for (int f = 0; f < fields.length; f++) {
                     Object ent = fields[f];
                     if (propModelInit[f] != null && !propModelInit[f].isEmpty()) {
@@ -1579,7 +1886,7 @@ public class Simulation_MSM_Population implements SimulationInterface {
 
     }
 
-    private final class CLASSIFIER_PREVAL implements PersonClassifier {
+    private final class CLASSIFIER_PREVAL implements StrainClassifier {
 
         /**
 		 * 
@@ -1595,21 +1902,25 @@ public class Simulation_MSM_Population implements SimulationInterface {
         public int classifyPerson(AbstractIndividualInterface p) {
 
             if (p instanceof MultiSiteMultiStrainPersonInterface) {
-                if (siteId >= 0) {
-                    return ((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite()[siteId];
-                } else {
-                    int combineSite = 0;
-                    int[] strainStat = ((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite();
-                    for (int i = 0; i < strainStat.length; i++) {
-                        combineSite = combineSite | ((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite()[i];
-                    }
-                    return combineSite;
-                }
+                return classifyStrains(((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite());
             } else {
                 return -1;
             }
         }
 
+        @Override
+        public int classifyStrains(int[] strainStat) {
+            if (siteId >= 0) {
+                return strainStat[siteId];
+            } else {
+                int combineSite = 0;
+                for (int i = 0; i < strainStat.length; i++) {
+                    combineSite = combineSite | strainStat[i];
+                }
+                return combineSite;
+            }
+        }
+
         @Override
         public int numClass() {
             return 4; // 0 - not infected, 0b01, 0b10, 0b11 
@@ -31,6 +31,8 @@ import static sim.Simulation_MSM_Population.FLAG_NO_REMOVAL;
  *     - Simplfy directory setting by removing one layer of folder
  * 20181011
  *     - Combine optimisation and simulation into a single simulation interface
+ * 20261017
+ *     - Add shared burn-in cache through FLAG_BURN_IN_CACHE
  * </pre>
  */
 public class Simulation_MSM_Population_BatchRun {
@@ -79,6 +81,9 @@ public class Simulation_MSM_Population_BatchRun {
 
         System.out.println(String.format("# of folders matched  = %d", folderNames.length));
 
+        // Shared by all folders, including those for optimisation
+        SinglePopRunnable.setDefaultBurnInCache(Simulation_MSM_Population.getBurnInCacheFromFlags(extraFlag));
+
         for (String singleSimFolder : folderNames) {
             sim = new Simulation_MSM_Population();
 
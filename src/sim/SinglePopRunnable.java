@@ -58,6 +58,8 @@ import relationship.SingleRelationship;
  *  - Add support for vaccine setting
  * 20190620
  *  - Add support for initial pop size
+ * 20261017
+ *  - Add optional burn-in cache (BurnInCache)
  * </pre>
  *
  */
@@ -83,6 +85,13 @@ public class SinglePopRunnable implements Runnable {
     private String[] importSetting = null;
     private File baseDir = null;
 
+    // Burn-in cache (if any), and fields known not to affect burn-in
+    private static BurnInCache defaultBurnInCache = null;
+    private BurnInCache burnInCache = defaultBurnInCache;
+    private int[] burnInCacheIgnoredFields = null;
+    // Values used in model_prop_initialise, as part of burn-in cache key
+    private String[] modelInitVal = null;
+
     private String infectioHistoryPrefix = null;  // If not null, then export infection history
 
     private final HashMap<Integer, float[]> infectionIntroMap = new HashMap<>();  // Global time, prevalence
@@ -153,6 +162,25 @@ public class SinglePopRunnable implements Runnable {
         this.infectioHistoryPrefix = infectioHistoryPrefix;
     }
 
+    public static void setDefaultBurnInCache(BurnInCache defaultBurnInCache) {
+        SinglePopRunnable.defaultBurnInCache = defaultBurnInCache;
+    }
+
+    public void setBurnInCache(BurnInCache burnInCache) {
+        this.burnInCache = burnInCache;
+    }
+
+    /**
+     * Set fields that are left out of burn-in cache key, e.g. transmission parameters if
+     * no infection is introduced until after burn-in. The current values of these fields are
+     * kept if a cached population is used.
+     *
+     * @param burnInCacheIgnoredFields index of fields
+     */
+    public void setBurnInCacheIgnoredFields(int[] burnInCacheIgnoredFields) {
+        this.burnInCacheIgnoredFields = burnInCacheIgnoredFields;
+    }
+
     public void setImportFile(File importPath, String[] importSetting) {
         this.importFile = importPath;
         this.importSetting = importSetting;
@@ -330,6 +358,58 @@ public class SinglePopRunnable implements Runnable {
         }
     }
 
+    /**
+     * Set population to a burned-in population from cache, as in population import,
+     * except that fields in burnInCacheIgnoredFields are kept.
+     *
+     * @param fields fields of burned-in population, or null if not available
+     * @return true if population is restored
+     */
+    private boolean restoreBurnIn(Object[] fields) {
+        if (fields == null) {
+            return false;
+        }
+        Object[] currentFields = Arrays.copyOf(getPopulation().getFields(), getPopulation().getFields().length);
+        if (burnInCacheIgnoredFields != null) {
+            for (int f : burnInCacheIgnoredFields) {
+                fields[f] = currentFields[f];
+            }
+        }
+        for (int f = 0; f < fields.length; f++) {
+            getPopulation().setParameter(" ", f, fields[f]);
+        }
+        // Population has been initialised already, so drop what was derived from it
+        if (getPopulation() instanceof MSMPopulation) {
+            ((MSMPopulation) getPopulation()).resetTransientCaches();
+        }
+        getPopulation().initialiseInfection(0); // 0 = using orginal RNG
+
+        // Coexist matrix for new infection objects
+        for (AbstractInfection inf : getPopulation().getInfList()) {
+            if (coexistMat != null) {
+                ((MultiStrainInfectionInterface) inf).setStrainCoexistMatrix(coexistMat);
+            } else {
+                ((MultiStrainInfectionInterface) inf).setStrainCoexistMatrix(new float[1][1]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if burned-in population can be stored in cache, i.e. if ignored fields
+     * (if any) could not have affected burn-in as there is no infection
+     */
+    private boolean isBurnInCacheable() {
+        if (burnInCacheIgnoredFields != null && burnInCacheIgnoredFields.length > 0) {
+            for (int n : getPopulation().getNumInf()) {
+                if (n > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     // Export popualtion if needed
     public void exportPopAt() {
         exportPopAt(false);
@@ -415,10 +495,7 @@ public class SinglePopRunnable implements Runnable {
 
                                 int numCasualIn6month = 0;
                                 if (person instanceof population.person.RelationshipPerson_MSM) {
-                                    int[] casualRec = ((population.person.RelationshipPerson_MSM) person).getCasualRecord();
-                                    for (int i = 0; i < casualRec.length; i++) {
-                                        numCasualIn6month += (casualRec[i] != 0) ? 1 : 0;
-                                    }
+                                    numCasualIn6month = ((population.person.RelationshipPerson_MSM) person).getNumCasualInRecord();
                                 }
 
                                 int[] infStat = person.getInfectionStatus();
@@ -439,7 +516,7 @@ public class SinglePopRunnable implements Runnable {
                                 numPartnStr.append(',');
                                 numPartnStr.append((int) person.getAge());
                                 numPartnStr.append(',');
-                                numPartnStr.append(((Number) person.getParameter(person.indexToParamName(population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue());
+                                numPartnStr.append(((population.person.RelationshipPerson_MSM) person).getIntParam(population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX));
                                 numPartnStr.append(',');
                                 numPartnStr.append(inReg);
                                 numPartnStr.append(',');
@@ -486,6 +563,7 @@ public class SinglePopRunnable implements Runnable {
     }
 
     public void model_prop_initialise(int modelBurnIn, String[] model_init_val) {
+        modelInitVal = model_init_val == null ? null : Arrays.copyOf(model_init_val, model_init_val.length);
         if (model_init_val != null) {
             Object[] propInitVal = new Object[model_init_val.length];
             for (int i = 0; i < model_init_val.length; i++) {
@@ -637,7 +715,27 @@ public class SinglePopRunnable implements Runnable {
             }
 
             long tic = System.currentTimeMillis();
-            modelBurnIn();
+            String burnInCacheKey = null;
+            boolean burnInFromCache = false;
+            if (burnInCache != null && modelBurnIn > 0) {
+                try {
+                    burnInCacheKey = burnInCache.generateKey(getPopulation(), modelBurnIn, burnInCacheIgnoredFields,
+                            modelInitVal, coexistMat);
+                    burnInFromCache = restoreBurnIn(burnInCache.load(burnInCacheKey));
+                } catch (IOException ex) {
+                    ex.printStackTrace(System.err);
+                    burnInCacheKey = null;
+                }
+            }
+            if (burnInFromCache) {
+                showStrStatus("S" + getId() + ": Model burn-in loaded from cache "
+                        + burnInCache.getCacheDir().getAbsolutePath() + " (" + burnInCacheKey + ")");
+            } else {
+                modelBurnIn();
+                if (burnInCacheKey != null && isBurnInCacheable()) {
+                    burnInCache.store(burnInCacheKey, getPopulation());
+                }
+            }
             showStrStatus("S" + getId() + ": Model burn-in finished after "
                     + (System.currentTimeMillis() - tic) / 1000f + "s.");
 
@@ -1054,8 +1152,8 @@ public class SinglePopRunnable implements Runnable {
 
                                         if (partner instanceof population.person.RelationshipPerson_MSM) {
                                             totalCollectionEnt[PATIENT_ZERO_PARNTER_REC_BEHAVIOR]
-                                                    = ((Number) partner.getParameter(
-                                                            partner.indexToParamName(population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue();
+                                                    = ((population.person.RelationshipPerson_MSM) partner).getIntParam(
+                                                            population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
                                         }
 
                                         patient_zero_partners_record.put(partner.getId(), totalCollectionEnt);
@@ -1221,14 +1319,10 @@ public class SinglePopRunnable implements Runnable {
                 String[] key = new String[]{"  0", "1-9", "10+", ""};
                 for (AbstractIndividualInterface p : pop.getPop()) {
                     RelationshipPerson person = (RelationshipPerson) p;
-                    int behaviour = ((Number) person.getParameter(person.indexToParamName(population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue();
+                    int behaviour = ((population.person.RelationshipPerson_MSM) person).getIntParam(population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
 
                     if (behaviour != population.person.RelationshipPerson_MSM.BEHAV_REG_ONLY) {
-                        int[] casualRec = ((population.person.RelationshipPerson_MSM) person).getCasualRecord();
-                        int numCasual = 0;
-                        for (int i = 0; i < casualRec.length; i++) {
-                            numCasual += (casualRec[i] != 0) ? 1 : 0;
-                        }
+                        int numCasual = ((population.person.RelationshipPerson_MSM) person).getNumCasualInRecord();
 
                         if (numCasual >= casualPart_Stat.length) {
                             casualPart_Stat = Arrays.copyOf(casualPart_Stat, numCasual + 1);
@@ -1308,9 +1402,8 @@ public class SinglePopRunnable implements Runnable {
                     if (p instanceof population.person.RelationshipPerson_MSM) {
 
                         validCandidate &= (behavior < 0)
-                                || behavior == ((Number) p.getParameter(
-                                        ((RelationshipPerson) p).indexToParamName(
-                                                population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue();
+                                || behavior == ((population.person.RelationshipPerson_MSM) p).getIntParam(
+                                        population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
                     }
 
                     if (validCandidate) {
@@ -1377,8 +1470,8 @@ public class SinglePopRunnable implements Runnable {
 
                                         if (partner instanceof population.person.RelationshipPerson_MSM) {
                                             totalCollectionEnt[PATIENT_ZERO_PARNTER_REC_BEHAVIOR]
-                                                    = ((Number) partner.getParameter(partner.indexToParamName(
-                                                            population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX))).intValue();
+                                                    = ((population.person.RelationshipPerson_MSM) partner).getIntParam(
+                                                            population.person.RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX);
                                         }
 
                                         patient_zero_partners_record.put(partner.getId(), totalCollectionEnt);
@@ -0,0 +1,97 @@
+package population;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Booster schedule as calendar queue, against the HashMap schedule it replaces.
+ */
+public class Test_BoosterCalendarQueue {
+
+    @Test
+    public void pollInScheduleOrder() {
+        BoosterCalendarQueue queue = new BoosterCalendarQueue();
+        queue.schedule(10, 1, 0);
+        queue.schedule(20, 2, 1);
+        queue.schedule(10, 3, 2);
+        assertEquals(3, queue.getNumScheduled());
+
+        assertEquals(0, queue.poll(9));
+        assertArrayEquals(new int[]{1, 3}, polledId(queue, queue.poll(10)));
+        assertEquals(2, queue.getPolledSlot(1));
+        assertEquals(1, queue.getNumScheduled());
+        assertArrayEquals(new int[]{2}, polledId(queue, queue.poll(20)));
+        assertEquals(0, queue.getNumScheduled());
+    }
+
+    @Test
+    public void growBeyondInitialBuckets() {
+        BoosterCalendarQueue queue = new BoosterCalendarQueue();
+        // Days 64 apart share a bucket until the queue grows
+        for (int d = 0; d < 1000; d += 32) {
+            queue.schedule(d, d, d);
+            queue.schedule(d, d + 1, d + 1);
+        }
+        for (int d = 0; d < 1000; d++) {
+            int num = queue.poll(d);
+            if (d % 32 == 0) {
+                assertArrayEquals(new int[]{d, d + 1}, polledId(queue, num));
+            } else {
+                assertEquals(0, num);
+            }
+        }
+        assertEquals(0, queue.getNumScheduled());
+    }
+
+    @Test
+    public void pastDayNeverPolled() {
+        BoosterCalendarQueue queue = new BoosterCalendarQueue();
+        queue.poll(100);
+        queue.schedule(100, 1, 0);
+        queue.schedule(50, 2, 1);
+        assertEquals(2, queue.getNumScheduled());
+        assertEquals(0, queue.poll(101));
+        // Bucket of day 100 is needed by day 164, so its entry is discarded
+        queue.schedule(164, 3, 2);
+        assertEquals(2, queue.getNumScheduled());
+        assertArrayEquals(new int[]{3}, polledId(queue, queue.poll(164)));
+    }
+
+    @Test
+    public void scheduleMapRoundTrip() throws Exception {
+        HashMap<Integer, ArrayList<Integer>> schedule = new HashMap<>();
+        schedule.put(5, new ArrayList<>(Arrays.asList(7, 8)));
+        schedule.put(300, new ArrayList<>(Arrays.asList(9)));
+        BoosterCalendarQueue queue = BoosterCalendarQueue.fromScheduleMap(schedule);
+        assertEquals(schedule, queue.toScheduleMap());
+
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(byteOut)) {
+            objOut.writeObject(queue);
+        }
+        BoosterCalendarQueue imported;
+        try (ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(byteOut.toByteArray()))) {
+            imported = (BoosterCalendarQueue) objIn.readObject();
+        }
+        assertEquals(schedule, imported.toScheduleMap());
+        assertArrayEquals(new int[]{7, 8}, polledId(imported, imported.poll(5)));
+        assertEquals(-1, imported.getPolledSlot(0));
+    }
+
+    private static int[] polledId(BoosterCalendarQueue queue, int num) {
+        int[] res = new int[num];
+        for (int i = 0; i < num; i++) {
+            res[i] = queue.getPolledId(i);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,82 @@
+package population;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Philox4x32-10 output against known answers, and consistency of keyed and stream draws.
+ */
+public class Test_CounterBasedRandomGenerator {
+
+    @Test
+    public void knownAnswer() {
+        // Known answer vectors of Philox4x32-10 from Random123 (key, counter, output)
+        int[] out = new int[4];
+        new CounterBasedRandomGenerator(0L).generateBlock(0, 0, 0, 0, out);
+        assertArrayEquals(new int[]{0x6627e8d5, 0xe169c58d, 0xbc57ac4c, 0x9b00dbd8}, out);
+
+        new CounterBasedRandomGenerator(-1L).generateBlock(-1, -1, -1, -1, out);
+        assertArrayEquals(new int[]{0x408f276d, 0x41c83b0e, 0xa20bc7c6, 0x6d5451fd}, out);
+
+        new CounterBasedRandomGenerator((0x299f31d0L << 32) | 0xa4093822L)
+                .generateBlock(0x243f6a88, 0x85a308d3, 0x13198a2e, 0x03707344, out);
+        assertArrayEquals(new int[]{0xd16cfe09, 0x94fdcceb, 0x5001e420, 0x24126ea1}, out);
+    }
+
+    @Test
+    public void keyedDrawMatchesStream() {
+        CounterBasedRandomGenerator keyed = new CounterBasedRandomGenerator(2251912970037127827l);
+        CounterBasedRandomGenerator stream = new CounterBasedRandomGenerator(2251912970037127827l);
+        for (int c = 0; c < 1000; c++) {
+            // Keyed draws use the first output words of counter (c0, c1, c2, c3), as with the first draw of a stream
+            stream.setStream(c, c * 31, -c);
+            assertEquals(keyed.nextDouble(c, c * 31, -c, 0), stream.nextDouble(), 0);
+            stream.setStream(c, c * 31, -c);
+            assertEquals(keyed.nextFloat(c, c * 31, -c, 0), stream.nextFloat(), 0);
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSameSequence() {
+        CounterBasedRandomGenerator rng0 = new CounterBasedRandomGenerator(20);
+        CounterBasedRandomGenerator rng1 = new CounterBasedRandomGenerator(20);
+        CounterBasedRandomGenerator rngOther = new CounterBasedRandomGenerator(21);
+        int numDiff = 0;
+        for (int i = 0; i < 1000; i++) {
+            int v = rng0.nextInt();
+            assertEquals(v, rng1.nextInt());
+            if (v != rngOther.nextInt()) {
+                numDiff++;
+            }
+        }
+        assertNotEquals(0, numDiff);
+
+        // Repositioned stream repeats its draws
+        rng0.setStream(1, 2, 3);
+        long[] draws = new long[10];
+        for (int i = 0; i < draws.length; i++) {
+            draws[i] = rng0.nextLong();
+        }
+        rng0.setStream(1, 2, 3);
+        for (long d : draws) {
+            assertEquals(d, rng0.nextLong());
+        }
+    }
+
+    @Test
+    public void drawsInRange() {
+        CounterBasedRandomGenerator rng = new CounterBasedRandomGenerator(1);
+        for (int i = 0; i < 10000; i++) {
+            double d = rng.nextDouble();
+            float f = rng.nextFloat();
+            int n = rng.nextInt(7);
+            assertTrue(d >= 0 && d < 1);
+            assertTrue(f >= 0 && f < 1);
+            assertTrue(n >= 0 && n < 7);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package population;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Act schedule by days until next act (MSM_USE_ACT_SCHEDULE) against a daily draw
+ * with the same per day probability.
+ */
+public class Test_MSMPopulation_ActSchedule {
+
+    private static final int NUM_DAYS = 200000;
+
+    @Test
+    public void sameExpectedActCount() {
+        MSMPopulation pop = new MSMPopulation(2251912970037127827l);
+        CounterBasedRandomGenerator rng = new CounterBasedRandomGenerator(1);
+        for (float p : new float[]{0.005f, 0.05f, 1 / 7f, 0.5f, 0.9999f}) {
+            int numDaily = 0;
+            int numScheduled = 0;
+            int daysToNext = pop.nextActInDays(p, rng.nextDouble());
+            for (int d = 0; d < NUM_DAYS; d++) {
+                if (rng.nextDouble() < p) {
+                    numDaily++;
+                }
+                // As MSMPopulation.countDownActSchedule
+                daysToNext--;
+                if (daysToNext == 0) {
+                    numScheduled++;
+                    daysToNext = pop.nextActInDays(p, rng.nextDouble());
+                }
+            }
+            double expected = (double) NUM_DAYS * p;
+            double tol = 5 * Math.sqrt(expected * (1 - p)) + 1;
+            assertEquals("Daily draw, p = " + p, expected, numDaily, tol);
+            assertEquals("Act schedule, p = " + p, expected, numScheduled, tol);
+        }
+    }
+
+    @Test
+    public void geometricDaysToNextAct() {
+        MSMPopulation pop = new MSMPopulation(2251912970037127827l);
+        float p = 0.2f;
+        // P(days > n) = (1 - p)^n, from the inverse of the distribution function
+        assertEquals(1, pop.nextActInDays(p, 0));
+        assertEquals(1, pop.nextActInDays(p, p - 1e-6));
+        assertEquals(2, pop.nextActInDays(p, p + 1e-6));
+        assertEquals(3, pop.nextActInDays(p, 1 - (1 - p) * (1 - p) + 1e-6));
+        assertEquals(Integer.MAX_VALUE, pop.nextActInDays(0, 0.5));
+        assertEquals(1, pop.nextActInDays(1, 0.5));
+    }
+
+}
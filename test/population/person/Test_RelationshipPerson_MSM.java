@@ -0,0 +1,60 @@
+package population.person;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Reset of MSM specific state when a person replaces one who has left the population.
+ */
+public class Test_RelationshipPerson_MSM {
+
+    private static final double AGE = 16 * 360;
+
+    @Test
+    public void resetTakesOverBuffers() {
+        RelationshipPerson_MSM released = new RelationshipPerson_MSM(1, true, AGE, 3);
+        released.setIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX, RelationshipPerson_MSM.BEHAV_BOTH);
+        released.setIntParam(RelationshipPerson_MSM.PARAM_LAST_SCREEN_AT_AGE, (int) AGE);
+        released.addCasualPartner(new RelationshipPerson_MSM(2, true, AGE, 3));
+        int[] param = released.param;
+        int[] casualRecordId = released.casualRecordId;
+
+        RelationshipPerson_MSM person = new RelationshipPerson_MSM(3, true, AGE, 3, released);
+
+        assertSame(param, person.param);
+        assertSame(casualRecordId, person.casualRecordId);
+        for (int i = 0; i < RelationshipPerson_MSM.PARA_NANE.length; i++) {
+            assertEquals(0, person.getIntParam(RelationshipPerson.LENGTH_PARAM_TOTAL + i));
+        }
+        assertEquals(0, person.getNumCasualInRecord());
+
+        assertNull(released.param);
+        assertEquals(0, released.getNumCasualInRecord());
+        // Stale expiry of released person is a no-op
+        released.expireCasualRecord();
+    }
+
+    @Test
+    public void resetTakesOverColumnStoreSlot() {
+        RelationshipPerson_MSM_ColumnStore store = new RelationshipPerson_MSM_ColumnStore(8);
+        RelationshipPerson_MSM released = new RelationshipPerson_MSM(1, true, AGE, 3);
+        released.attachColumnStore(store, 5);
+        released.setIntParam(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G, RelationshipPerson_MSM.IMMUNE_ACT_ANAL);
+
+        RelationshipPerson_MSM person = new RelationshipPerson_MSM(3, true, AGE, 3, released);
+
+        assertSame(store, person.getColumnStore());
+        assertEquals(5, person.getPopulationSlot());
+        assertNull(person.param);
+        assertEquals(0, store.getParamColumn(RelationshipPerson_MSM.PARAM_IMMUNE_ACT_SITE_G)[5]);
+        assertNull(released.getColumnStore());
+
+        person.setIntParam(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX, RelationshipPerson_MSM.BEHAV_CAS_ONLY);
+        assertEquals(RelationshipPerson_MSM.BEHAV_CAS_ONLY,
+                store.getParamColumn(RelationshipPerson_MSM.PARAM_BEHAV_TYPE_INDEX)[5]);
+    }
+
+}
@@ -0,0 +1,135 @@
+package population.relationshipMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import relationship.SingleRelationship;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Index of RelationshipMap_MSM against the underlying map, including after import.
+ */
+public class Test_RelationshipMap_MSM {
+
+    private static final int NUM_PERSON = 20000;
+
+    @Test
+    public void indexMatchesMap() {
+        RelationshipMap_MSM relMap = generateMap(new Random(1));
+        assertIndexMatches(relMap, relMap);
+
+        // Edge churn and vertex removal
+        Random rng = new Random(2);
+        SingleRelationship[] edges = relMap.edgeSet().toArray(new SingleRelationship[0]);
+        for (int i = 0; i < edges.length / 2; i++) {
+            relMap.removeEdge(edges[rng.nextInt(edges.length)]);
+        }
+        for (int id = 0; id < NUM_PERSON; id += 7) {
+            relMap.removeVertex(id);
+        }
+        assertFalse(relMap.containsVertex(7));
+        assertEquals(0, relMap.getDegree(7));
+        addRandomEdges(relMap, rng, NUM_PERSON / 4);
+        assertIndexMatches(relMap, relMap);
+    }
+
+    @Test
+    public void importedMapQueriedByThreads() throws Exception {
+        RelationshipMap_MSM relMap = generateMap(new Random(3));
+
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(byteOut)) {
+            objOut.writeObject(relMap);
+        }
+        final RelationshipMap_MSM imported;
+        try (ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(byteOut.toByteArray()))) {
+            imported = (RelationshipMap_MSM) objIn.readObject();
+        }
+
+        final int[] expectedDegree = new int[NUM_PERSON];
+        for (int id = 0; id < NUM_PERSON; id++) {
+            expectedDegree[id] = relMap.containsVertex(id) ? relMap.edgesOf(id).size() : -1;
+        }
+
+        // First queries of the imported map are made by several threads at once
+        int numThread = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService exec = Executors.newFixedThreadPool(numThread);
+        try {
+            ArrayList<Future<Integer>> res = new ArrayList<>();
+            for (int t = 0; t < numThread; t++) {
+                final int offset = t;
+                res.add(exec.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int numMismatch = 0;
+                        for (int i = 0; i < NUM_PERSON; i++) {
+                            int id = (i + offset * 997) % NUM_PERSON;
+                            int degree = imported.containsVertex(id) ? imported.getDegree(id) : -1;
+                            if (degree != expectedDegree[id]) {
+                                numMismatch++;
+                            }
+                        }
+                        return numMismatch;
+                    }
+                }));
+            }
+            for (Future<Integer> f : res) {
+                assertEquals(0, f.get().intValue());
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+        assertIndexMatches(imported, relMap);
+    }
+
+    private static RelationshipMap_MSM generateMap(Random rng) {
+        RelationshipMap_MSM relMap = new RelationshipMap_MSM();
+        for (int id = 0; id < NUM_PERSON; id++) {
+            // Some persons not in map
+            if (id % 5 != 0) {
+                relMap.addVertex(id);
+            }
+        }
+        addRandomEdges(relMap, rng, NUM_PERSON / 2);
+        return relMap;
+    }
+
+    private static void addRandomEdges(RelationshipMap_MSM relMap, Random rng, int numEdge) {
+        int numAdded = 0;
+        while (numAdded < numEdge) {
+            Integer a = rng.nextInt(NUM_PERSON);
+            Integer b = rng.nextInt(NUM_PERSON);
+            if (!a.equals(b) && relMap.containsVertex(a) && relMap.containsVertex(b)
+                    && relMap.degreeOf(a) < 2 && relMap.degreeOf(b) < 2 && !relMap.containsEdge(a, b)) {
+                relMap.addEdge(a, b, new RegCasRelationship(new Integer[]{a, b}, RegCasRelationship.REL_TYPE_CAS, 1));
+                numAdded++;
+            }
+        }
+    }
+
+    private static void assertIndexMatches(RelationshipMap_MSM relMap, RelationshipMap_MSM reference) {
+        for (int id = 0; id < NUM_PERSON; id++) {
+            assertEquals(reference.vertexSet().contains(id), relMap.containsVertex(id));
+            if (relMap.containsVertex(id)) {
+                int degree = reference.edgesOf(id).size();
+                assertEquals(degree, relMap.getDegree(id));
+                assertEquals(degree, relMap.degreeOf(Integer.valueOf(id)));
+                for (int i = 0; i < degree; i++) {
+                    assertTrue(reference.containsEdge(relMap.getEdge(id, i).getLinks()[0],
+                            relMap.getEdge(id, i).getLinks()[1]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package sim;
+
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import person.AbstractIndividualInterface;
+import population.MSMPopulation;
+import population.person.MultiSiteMultiStrainPersonInterface;
+import util.PersonClassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sims with a burned-in population restored from BurnInCache should give the
+ * same snapshot counts as sims with the burn-in run in full.
+ */
+public class Test_BurnInCache {
+
+    private static final long SEED = 2251912970037127827l;
+    private static final int POP_SIZE = 2000;
+    private static final int BURN_IN = 180;
+    private static final int NUM_SNAP = 4;
+    private static final int SNAP_FREQ = 30;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void cacheHitMatchesCacheMiss() throws Exception {
+        compareCacheHitAndMiss(false);
+    }
+
+    @Test
+    public void cacheHitMatchesCacheMissWithColumnStore() throws Exception {
+        compareCacheHitAndMiss(true);
+    }
+
+    @Test
+    public void keyFromModelInput() throws Exception {
+        BurnInCache cache = new BurnInCache(tempFolder.newFolder());
+        String key = cache.generateKey(initialisedPopulation(SEED, false), BURN_IN, null, null, null);
+        assertEquals(key, cache.generateKey(initialisedPopulation(SEED, false), BURN_IN, null, null, null));
+        assertNotEquals(key, cache.generateKey(initialisedPopulation(SEED + 1, false), BURN_IN, null, null, null));
+        assertNotEquals(key, cache.generateKey(initialisedPopulation(SEED, true), BURN_IN, null, null, null));
+        assertNotEquals(key, cache.generateKey(initialisedPopulation(SEED, false), BURN_IN + 1, null, null, null));
+    }
+
+    private static MSMPopulation initialisedPopulation(long seed, boolean useColumnStore) {
+        MSMPopulation pop = new MSMPopulation(seed);
+        pop.setInitNumInPop(POP_SIZE);
+        pop.setParameter("", MSMPopulation.MSM_USE_PERSON_COLUMN_STORE, useColumnStore);
+        pop.initialise();
+        return pop;
+    }
+
+    private void compareCacheHitAndMiss(boolean useColumnStore) throws Exception {
+        File cacheDir = tempFolder.newFolder();
+
+        int[][][] noCache = runSim(null, useColumnStore);
+        int[][][] cacheMiss = runSim(new BurnInCache(cacheDir), useColumnStore);
+        assertEquals("Burn-in not stored in cache", 1, cacheDir.listFiles().length);
+        int[][][] cacheHit = runSim(new BurnInCache(cacheDir), useColumnStore);
+
+        int numInfected = 0;
+        for (int[][] snap : noCache) {
+            numInfected += snap[0][1];
+        }
+        assertTrue("No infection in snapshot", numInfected > 0);
+        assertEquals(Arrays.deepToString(noCache), Arrays.deepToString(cacheMiss));
+        assertEquals(Arrays.deepToString(cacheMiss), Arrays.deepToString(cacheHit));
+    }
+
+    private static int[][][] runSim(BurnInCache burnInCache, boolean useColumnStore) {
+        SinglePopRunnable sim = new SinglePopRunnable(0, NUM_SNAP, SNAP_FREQ);
+        MSMPopulation pop = new MSMPopulation(SEED);
+        pop.setInitNumInPop(POP_SIZE);
+        pop.setParameter("", MSMPopulation.MSM_USE_PERSON_COLUMN_STORE, useColumnStore);
+        sim.setPopulation(pop);
+        sim.setProgressSupport(new PropertyChangeSupport(sim)); // Null response
+        sim.setPrintPrevalenceAtFreq(-1);
+        sim.setBurnInCache(burnInCache);
+        sim.setSnapShotOutput(new PersonClassifier[]{new InfectedClassifier()}, new boolean[]{false});
+        sim.model_prop_initialise(BURN_IN, null);
+        sim.setInfectionIntroAt(BURN_IN + 1, 0, 0.1f, 30);
+        sim.run();
+        assertTrue("Sim not completed", sim.getSnapCounts()[NUM_SNAP - 1] != null);
+        return sim.getSnapCounts();
+    }
+
+    private static class InfectedClassifier implements PersonClassifier {
+
+        private static final long serialVersionUID = 5219402176043851376L;
+
+        @Override
+        public int classifyPerson(AbstractIndividualInterface p) {
+            int[] strainStat = ((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite();
+            for (int s : strainStat) {
+                if (s != 0) {
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public int numClass() {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package sim;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pre-extracted fields are returned as put, whether held in memory or spilled.
+ */
+public class Test_PreExtractFieldStore {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void spillToDir() throws Exception {
+        File spillDir = tempFolder.newFolder();
+        PreExtractFieldStore store = new PreExtractFieldStore(2, spillDir);
+        putAll(store, 5);
+        // Entries needed last are spilled first
+        assertEquals(3, spillDir.listFiles().length);
+        assertEquals(2, countInMemory(store.toArray(5)));
+        takeAll(store, 5);
+        assertEquals(0, spillDir.listFiles().length);
+    }
+
+    @Test
+    public void spillToTempDir() {
+        PreExtractFieldStore store = new PreExtractFieldStore(2, null);
+        putAll(store, 5);
+        takeAll(store, 5);
+        assertNull(store.take(0));
+    }
+
+    @Test
+    public void clearRemovesTempDir() {
+        int numTempDir = countTempSpillDir();
+        PreExtractFieldStore store = new PreExtractFieldStore(1, null);
+        putAll(store, 3);
+        assertEquals(numTempDir + 1, countTempSpillDir());
+        store.clear();
+        assertEquals(numTempDir, countTempSpillDir());
+    }
+
+    @Test
+    public void clearRemovesSpill() throws Exception {
+        File spillDir = tempFolder.newFolder();
+        PreExtractFieldStore store = new PreExtractFieldStore(1, spillDir);
+        putAll(store, 3);
+        store.clear();
+        assertFalse(store.contains(0));
+        assertFalse(store.contains(2));
+        assertEquals(0, spillDir.listFiles().length);
+    }
+
+    private static void putAll(PreExtractFieldStore store, int numSim) {
+        for (int s = 0; s < numSim; s++) {
+            store.put(s, new Object[]{s, "sim_" + s, new int[]{s, s + 1}});
+        }
+        for (int s = 0; s < numSim; s++) {
+            assertTrue(store.contains(s));
+        }
+    }
+
+    private static void takeAll(PreExtractFieldStore store, int numSim) {
+        for (int s = 0; s < numSim; s++) {
+            Object[] fields = store.take(s);
+            assertEquals(s, fields[0]);
+            assertEquals("sim_" + s, fields[1]);
+            assertArrayEquals(new int[]{s, s + 1}, (int[]) fields[2]);
+            assertFalse(store.contains(s));
+        }
+    }
+
+    private static int countTempSpillDir() {
+        File[] dirs = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        int num = 0;
+        for (File d : dirs) {
+            if (d.isDirectory() && d.getName().startsWith(PreExtractFieldStore.SPILL_FILE_PREFIX)) {
+                num++;
+            }
+        }
+        return num;
+    }
+
+    private static int countInMemory(Object[][] fields) {
+        int num = 0;
+        for (Object[] f : fields) {
+            if (f != null) {
+                num++;
+            }
+        }
+        return num;
+    }
+}
@@ -0,0 +1,80 @@
+package sim;
+
+import java.beans.PropertyChangeSupport;
+import java.util.Arrays;
+import org.junit.Test;
+import person.AbstractIndividualInterface;
+import population.MSMPopulation;
+import population.person.MultiSiteMultiStrainPersonInterface;
+import util.PersonClassifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression of sim output, i.e. snapshot counts, for a given seed.
+ */
+public class Test_SinglePopRunnable {
+
+    private static final long SEED = 2251912970037127827l;
+    private static final int POP_SIZE = 2000;
+    private static final int BURN_IN = 180;
+    private static final int NUM_SNAP = 4;
+    private static final int SNAP_FREQ = 30;
+
+    @Test
+    public void sameSeedGivesSameSnapCount() {
+        int[][][] snap = runSim(SEED, false);
+        int numInfected = 0;
+        for (int[][] s : snap) {
+            numInfected += s[0][1];
+        }
+        assertTrue("No infection in snapshot", numInfected > 0);
+        assertEquals(Arrays.deepToString(snap), Arrays.deepToString(runSim(SEED, false)));
+        assertNotEquals(Arrays.deepToString(snap), Arrays.deepToString(runSim(SEED + 1, false)));
+    }
+
+    @Test
+    public void columnStoreGivesSameSnapCount() {
+        // Column store only changes where person parameters are held
+        assertEquals(Arrays.deepToString(runSim(SEED, false)), Arrays.deepToString(runSim(SEED, true)));
+    }
+
+    private static int[][][] runSim(long seed, boolean useColumnStore) {
+        SinglePopRunnable sim = new SinglePopRunnable(0, NUM_SNAP, SNAP_FREQ);
+        MSMPopulation pop = new MSMPopulation(seed);
+        pop.setInitNumInPop(POP_SIZE);
+        pop.setParameter("", MSMPopulation.MSM_USE_PERSON_COLUMN_STORE, useColumnStore);
+        sim.setPopulation(pop);
+        sim.setProgressSupport(new PropertyChangeSupport(sim)); // Null response
+        sim.setPrintPrevalenceAtFreq(-1);
+        sim.setSnapShotOutput(new PersonClassifier[]{new InfectedClassifier()}, new boolean[]{false});
+        sim.model_prop_initialise(BURN_IN, null);
+        sim.setInfectionIntroAt(BURN_IN + 1, 0, 0.1f, 30);
+        sim.run();
+        assertTrue("Sim not completed", sim.getSnapCounts()[NUM_SNAP - 1] != null);
+        return sim.getSnapCounts();
+    }
+
+    private static class InfectedClassifier implements PersonClassifier {
+
+        private static final long serialVersionUID = -4300512736924186721L;
+
+        @Override
+        public int classifyPerson(AbstractIndividualInterface p) {
+            int[] strainStat = ((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite();
+            for (int s : strainStat) {
+                if (s != 0) {
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public int numClass() {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package test;
+
+import infection.AbstractInfection;
+import infection.MultiStrainInfectionInterface;
+import infection.vaccination.SiteSpecificVaccination;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import person.AbstractIndividualInterface;
+import population.MSMPopulation;
+import population.StrainClassifier;
+import population.person.MultiSiteMultiStrainPersonInterface;
+import population.relationshipMap.RegCasRelationship;
+import population.relationshipMap.RelationshipMap_MSM;
+import random.MersenneTwisterRandomGenerator;
+import relationship.RelationshipMap;
+import relationship.SingleRelationship;
+import util.PersonClassifier;
+
+/**
+ * Throughput and memory comparison for MSMPopulation settings.
+ *
+ * <pre>
+ * Usage: Util_MSMPopulation_Benchmark [mode] [popSize,popSize,...] [numDays] [seed]
+ *
+ * Mode:
+ *  layout - object per person layout vs. person column store
+ *  casual - high turnover casual partnership (most with 51-60 casual partners per 6 months)
+ *  vaccine - site specific vaccination coverage sweep
+ *  booster - high vaccine coverage with 6-monthly booster (e.g. numDays = 7200 for 20 years)
+ *  lookup - partner lookup of relationships by id vs. by slot reference, after numDays
+ *  relmap - edge churn and heap per edge of RelationshipMap vs. RelationshipMap_MSM (numDays = churn rounds)
+ *  globallimit - with MSM_USE_GLOBAL_CASUAL_LIMIT on
+ *  act - performAct on all current relationships, after numDays
+ *  parallel - sequential vs. parallel person loop (MSM_PERSON_LOOP_NUM_THREAD, with counter-based RNG),
+ *             with incidence for comparison
+ *  snapshot - daily snapshot count overhead, without classifiers and with cumulative site prevalence
+ *             classifiers by person vs. by strain array (StrainClassifier)
+ *  actschedule - daily act draw vs. act schedule (MSM_USE_ACT_SCHEDULE), over 10 seeds from seed,
+ *             with cumulative incidence by site of each run and mean of runs for validation
+ *  parallelact - acts in batch (MSM_ACT_NUM_THREAD, with act schedule and counter-based RNG) by number
+ *             of thread, with incidence for comparison (identical for all thread counts from 1)
+ * </pre>
+ */
+public class Util_MSMPopulation_Benchmark {
+
+    public static final String MODE_LAYOUT = "layout";
+    public static final String MODE_CASUAL = "casual";
+    public static final String MODE_VACCINE = "vaccine";
+    public static final String MODE_BOOSTER = "booster";
+    public static final String MODE_LOOKUP = "lookup";
+    public static final String MODE_RELMAP = "relmap";
+    public static final String MODE_GLOBAL_LIMIT = "globallimit";
+    public static final String MODE_ACT = "act";
+    public static final String MODE_PARALLEL = "parallel";
+    public static final String MODE_SNAPSHOT = "snapshot";
+    public static final String MODE_ACT_SCHEDULE = "actschedule";
+    public static final String MODE_PARALLEL_ACT = "parallelact";
+
+    public static void main(String[] arg) {
+        String mode = arg.length > 0 ? arg[0] : MODE_LAYOUT;
+        int[] popSizes = new int[]{10000, 100000, 1000000};
+        int numDays = 360;
+        long seed = 2251912970037127827l;
+
+        if (arg.length > 1) {
+            String[] ent = arg[1].split(",");
+            popSizes = new int[ent.length];
+            for (int i = 0; i < ent.length; i++) {
+                popSizes[i] = Integer.parseInt(ent[i].trim());
+            }
+        }
+        if (arg.length > 2) {
+            numDays = Integer.parseInt(arg[2]);
+        }
+        if (arg.length > 3) {
+            seed = Long.parseLong(arg[3]);
+        }
+
+        System.out.println("Mode = " + mode + ", pop size = " + Arrays.toString(popSizes)
+                + ", num days = " + numDays + ", seed = " + seed);
+        System.out.println("Setting,Pop size,Heap after init (MB),Init time (s),Step time (ms per day),Allocation (MB per day)");
+
+        for (int popSize : popSizes) {
+            switch (mode) {
+                case MODE_LAYOUT:
+                    benchmark("Object per person", newPopulation(seed, popSize, false), numDays);
+                    benchmark("Column store", newPopulation(seed, popSize, true), numDays);
+                    break;
+                case MODE_CASUAL:
+                    MSMPopulation pop = newPopulation(seed, popSize, false);
+                    pop.setParameter("", MSMPopulation.MSM_CAS_PART_PROB, new float[]{0.05f, 0.05f, 0.05f, 0.05f, 0.80f});
+                    benchmark("High casual turnover", pop, numDays);
+                    break;
+                case MODE_VACCINE:
+                    for (double coverage : new double[]{0, 0.25, 0.5, 0.75, 1}) {
+                        BenchmarkPopulation vPop = newPopulation(seed, popSize, false);
+                        vPop.setVaccination(coverage);
+                        benchmark("Vaccine coverage " + coverage, vPop, numDays);
+                    }
+                    break;
+                case MODE_BOOSTER:
+                    for (double coverage : new double[]{0.8, 0.9, 1}) {
+                        BenchmarkPopulation bPop = newPopulation(seed, popSize, false);
+                        bPop.setVaccination(coverage, 6 * 30);
+                        benchmark("Booster coverage " + coverage, bPop, numDays);
+                    }
+                    break;
+                case MODE_LOOKUP:
+                    MSMPopulation lPop = newPopulation(seed, popSize, false);
+                    benchmark("Before lookup", lPop, numDays);
+                    benchmarkPartnerLookup(lPop, 100);
+                    break;
+                case MODE_GLOBAL_LIMIT:
+                    MSMPopulation gPop = newPopulation(seed, popSize, false);
+                    gPop.setParameter("", MSMPopulation.MSM_USE_GLOBAL_CASUAL_LIMIT, true);
+                    benchmark("Global casual limit", gPop, numDays);
+                    break;
+                case MODE_ACT:
+                    BenchmarkPopulation aPop = newPopulation(seed, popSize, false);
+                    benchmark("Before performAct", aPop, numDays);
+                    aPop.benchmarkPerformAct(100);
+                    break;
+                case MODE_PARALLEL:
+                    for (int numThread : new int[]{1, 2, Runtime.getRuntime().availableProcessors()}) {
+                        MSMPopulation tPop = newPopulation(seed, popSize, false);
+                        tPop.setParameter("", MSMPopulation.MSM_USE_COUNTER_BASED_RNG, true);
+                        tPop.setParameter("", MSMPopulation.MSM_PERSON_LOOP_NUM_THREAD, numThread);
+                        benchmark("Person loop thread " + numThread, tPop, numDays);
+                        System.out.println("Cumulative incidence by site (G,A,R)," + popSize + ","
+                                + Arrays.toString(tPop.cumulativeIncidencesBySitesCount()));
+                    }
+                    break;
+                case MODE_SNAPSHOT:
+                    benchmark("No snapshot classifier", newPopulation(seed, popSize, false), numDays);
+                    for (boolean byStrain : new boolean[]{false, true}) {
+                        MSMPopulation sPop = newPopulation(seed, popSize, false);
+                        PersonClassifier[] cf = new PersonClassifier[4];
+                        for (int i = 0; i < cf.length; i++) {
+                            // All sites, G, A and R
+                            cf[i] = byStrain ? new SiteStrainClassifier(i - 1) : new SitePrevalenceClassifier(i - 1);
+                        }
+                        sPop.setSnapshotClassifier(cf);
+                        sPop.setSnapshotCount(new int[cf.length][4]); // Cumulative, i.e. counted daily
+                        benchmark(byStrain ? "Cumulative classifier by strain array" : "Cumulative classifier by person",
+                                sPop, numDays);
+                    }
+                    break;
+                case MODE_ACT_SCHEDULE:
+                    for (boolean useActSchedule : new boolean[]{false, true}) {
+                        double[] incidenceSum = new double[3];
+                        for (int r = 0; r < 10; r++) {
+                            MSMPopulation sPop = newPopulation(seed + r, popSize, false);
+                            sPop.setParameter("", MSMPopulation.MSM_USE_ACT_SCHEDULE, useActSchedule);
+                            benchmark(useActSchedule ? "Act schedule" : "Daily act draw", sPop, numDays);
+                            int[] incidence = sPop.cumulativeIncidencesBySitesCount();
+                            System.out.println("Cumulative incidence by site (G,A,R)," + popSize + ","
+                                    + Arrays.toString(incidence));
+                            for (int s = 0; s < incidenceSum.length; s++) {
+                                incidenceSum[s] += incidence[s];
+                            }
+                        }
+                        System.out.println(String.format("Mean cumulative incidence by site (G,A,R),%d,%s,%.1f,%.1f,%.1f",
+                                popSize, useActSchedule ? "Act schedule" : "Daily act draw",
+                                incidenceSum[0] / 10, incidenceSum[1] / 10, incidenceSum[2] / 10));
+                    }
+                    break;
+                case MODE_PARALLEL_ACT:
+                    for (int numThread : new int[]{0, 1, 2, Runtime.getRuntime().availableProcessors()}) {
+                        MSMPopulation pPop = newPopulation(seed, popSize, false);
+                        pPop.setParameter("", MSMPopulation.MSM_USE_COUNTER_BASED_RNG, true);
+                        pPop.setParameter("", MSMPopulation.MSM_USE_ACT_SCHEDULE, true);
+                        pPop.setParameter("", MSMPopulation.MSM_ACT_NUM_THREAD, numThread);
+                        benchmark("Act thread " + numThread, pPop, numDays);
+                        System.out.println("Cumulative incidence by site (G,A,R)," + popSize + ","
+                                + Arrays.toString(pPop.cumulativeIncidencesBySitesCount()));
+                    }
+                    break;
+                case MODE_RELMAP:
+                    benchmarkRelationshipMap("RelationshipMap", new RelationshipMap(), popSize, numDays, seed);
+                    benchmarkRelationshipMap("RelationshipMap_MSM", new RelationshipMap_MSM(), popSize, numDays, seed);
+                    break;
+                default:
+                    System.err.println("Benchmark mode '" + mode + "' not supported.");
+                    return;
+            }
+        }
+    }
+
+    protected static BenchmarkPopulation newPopulation(long seed, int popSize, boolean useColumnStore) {
+        BenchmarkPopulation pop = new BenchmarkPopulation(seed);
+        pop.setInitNumInPop(popSize);
+        pop.setParameter("", MSMPopulation.MSM_USE_PERSON_COLUMN_STORE, useColumnStore);
+        return pop;
+    }
+
+    protected static void benchmark(String setting, MSMPopulation pop, int numDays) {
+        long tic = System.currentTimeMillis();
+        pop.initialise();
+        for (AbstractInfection inf : pop.getInfList()) {
+            ((MultiStrainInfectionInterface) inf).setStrainCoexistMatrix(new float[1][1]);
+        }
+        float initTime = (System.currentTimeMillis() - tic) / 1000f;
+        long heapUsed = usedHeap();
+
+        long allocBefore = allocatedBytes();
+        tic = System.nanoTime();
+        for (int t = 0; t < numDays; t++) {
+            pop.advanceTimeStep(1);
+        }
+        double stepTime = (System.nanoTime() - tic) / 1.0e6 / numDays;
+        double allocPerDay = (allocatedBytes() - allocBefore) / (1024.0 * 1024) / numDays;
+
+        System.out.println(String.format("%s,%d,%.1f,%.2f,%.3f,%.2f", setting, pop.getPop().length,
+                heapUsed / (1024.0 * 1024), initTime, stepTime, allocPerDay));
+    }
+
+    /**
+     * @return bytes allocated by current thread so far, or -1 if not supported by JVM
+     */
+    protected static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    protected static void benchmarkPartnerLookup(MSMPopulation pop, int numRep) {
+        ArrayList<SingleRelationship> relList = new ArrayList<>();
+        for (RelationshipMap relMap : pop.getRelMap()) {
+            relList.addAll(relMap.edgeSet());
+        }
+        SingleRelationship[] rels = relList.toArray(new SingleRelationship[relList.size()]);
+        long check = 0;
+
+        long tic = System.nanoTime();
+        for (int r = 0; r < numRep; r++) {
+            for (SingleRelationship rel : rels) {
+                for (int p = 0; p < rel.getLinks().length; p++) {
+                    check += pop.getLocalData().get(rel.getLinks()[p].intValue()).getId();
+                }
+            }
+        }
+        double byId = (System.nanoTime() - tic) / 1.0e6 / numRep;
+
+        tic = System.nanoTime();
+        for (int r = 0; r < numRep; r++) {
+            for (SingleRelationship rel : rels) {
+                for (int p = 0; p < rel.getLinks().length; p++) {
+                    check -= pop.getRelationshipPerson(rel, p).getId();
+                }
+            }
+        }
+        double bySlot = (System.nanoTime() - tic) / 1.0e6 / numRep;
+
+        System.out.println(String.format("Partner lookup (ms per pass of %d relationships),%d,by id = %.3f,by slot = %.3f%s",
+                rels.length, pop.getPop().length, byId, bySlot, check == 0 ? "" : ",MISMATCH"));
+    }
+
+    /**
+     * Form relationships between random pairs of persons with less than 2 partners
+     * (as in population with both regular and casual partnership), then for each
+     * round replace a random edge with a new one.
+     */
+    protected static void benchmarkRelationshipMap(String setting, RelationshipMap relMap,
+            int numPerson, int numRound, long seed) {
+        MersenneTwisterRandomGenerator rng = new MersenneTwisterRandomGenerator(seed);
+        int numEdge = numPerson / 2;
+        SingleRelationship[] edges = new SingleRelationship[numEdge];
+
+        long heapBefore = usedHeap();
+        for (int id = 1; id <= numPerson; id++) {
+            relMap.addVertex(id);
+        }
+        for (int e = 0; e < numEdge; e++) {
+            edges[e] = addRandomEdge(relMap, numPerson, rng);
+        }
+        double heapPerEdge = (double) (usedHeap() - heapBefore) / numEdge;
+
+        long numOp = 0;
+        long tic = System.nanoTime();
+        for (int r = 0; r < numRound; r++) {
+            for (int k = 0; k < numEdge / 10; k++) {
+                int e = rng.nextInt(numEdge);
+                relMap.removeEdge(edges[e]);
+                edges[e] = addRandomEdge(relMap, numPerson, rng);
+                numOp += 2;
+            }
+        }
+        double opPerSec = numOp / ((System.nanoTime() - tic) / 1.0e9);
+
+        System.out.println(String.format("%s,%d,heap per vertex and edge (bytes) = %.1f,edge add/remove per sec = %.0f",
+                setting, numPerson, heapPerEdge, opPerSec));
+    }
+
+    private static SingleRelationship addRandomEdge(RelationshipMap relMap, int numPerson, MersenneTwisterRandomGenerator rng) {
+        while (true) {
+            Integer a = 1 + rng.nextInt(numPerson);
+            Integer b = 1 + rng.nextInt(numPerson);
+            if (!a.equals(b) && relMap.degreeOf(a) < 2 && relMap.degreeOf(b) < 2) {
+                SingleRelationship rel = new RegCasRelationship(new Integer[]{a, b}, RegCasRelationship.REL_TYPE_CAS, 1);
+                if (relMap.addEdge(a, b, rel)) {
+                    return rel;
+                }
+            }
+        }
+    }
+
+    /**
+     * Site prevalence by strain, as Simulation_MSM_Population.CLASSIFIER_PREVAL (site -1 = all sites)
+     */
+    protected static class SitePrevalenceClassifier implements PersonClassifier {
+
+        private static final long serialVersionUID = -3216094474163307618L;
+        final int siteId;
+
+        public SitePrevalenceClassifier(int siteId) {
+            this.siteId = siteId;
+        }
+
+        @Override
+        public int classifyPerson(AbstractIndividualInterface p) {
+            if (p instanceof MultiSiteMultiStrainPersonInterface) {
+                int[] strainStat = ((MultiSiteMultiStrainPersonInterface) p).getCurrentStrainsAtSite();
+                if (siteId >= 0) {
+                    return strainStat[siteId];
+                }
+                int combineSite = 0;
+                for (int i = 0; i < strainStat.length; i++) {
+                    combineSite |= strainStat[i];
+                }
+                return combineSite;
+            }
+            return -1;
+        }
+
+        @Override
+        public int numClass() {
+            return 4;
+        }
+    }
+
+    protected static class SiteStrainClassifier extends SitePrevalenceClassifier implements StrainClassifier {
+
+        private static final long serialVersionUID = 8850343171380457391L;
+
+        public SiteStrainClassifier(int siteId) {
+            super(siteId);
+        }
+
+        @Override
+        public int classifyStrains(int[] strainStat) {
+            if (siteId >= 0) {
+                return strainStat[siteId];
+            }
+            int combineSite = 0;
+            for (int i = 0; i < strainStat.length; i++) {
+                combineSite |= strainStat[i];
+            }
+            return combineSite;
+        }
+    }
+
+    protected static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    protected static class BenchmarkPopulation extends MSMPopulation {
+
+        private static final long serialVersionUID = 6129371745937400261L;
+        private double initVaccCoverage = -1;
+        private int boosterInterval = 0;
+
+        public BenchmarkPopulation(long seed) {
+            super(seed);
+        }
+
+        /**
+         * Vaccinate a proportion of population at initialise, with vaccine active
+         * throughout and 2 years vaccine duration.
+         *
+         * @param coverage proportion vaccinated
+         */
+        public void setVaccination(double coverage) {
+            setVaccination(coverage, 0);
+        }
+
+        /**
+         * As setVaccination(coverage), with booster for those vaccinated.
+         *
+         * @param coverage proportion vaccinated
+         * @param boosterInterval days between booster, or 0 if no booster
+         */
+        public void setVaccination(double coverage, int boosterInterval) {
+            initVaccCoverage = coverage;
+            this.boosterInterval = boosterInterval;
+        }
+
+        /**
+         * Call performAct on every current relationship, numRep times
+         */
+        public void benchmarkPerformAct(int numRep) {
+            ArrayList<RegCasRelationship> relList = new ArrayList<>();
+            for (RelationshipMap relMap : getRelMap()) {
+                for (SingleRelationship rel : relMap.edgeSet()) {
+                    relList.add((RegCasRelationship) rel);
+                }
+            }
+            RegCasRelationship[] rels = relList.toArray(new RegCasRelationship[relList.size()]);
+            long allocBefore = allocatedBytes();
+            long tic = System.nanoTime();
+            for (int r = 0; r < numRep; r++) {
+                for (RegCasRelationship rel : rels) {
+                    performAct(rel);
+                }
+            }
+            long numCall = (long) numRep * rels.length;
+            System.out.println(String.format("performAct (ns per call) over %d relationships,%d,%.1f,allocation (bytes per call) = %.1f",
+                    rels.length, getPop().length, (System.nanoTime() - tic) / (double) numCall,
+                    (allocatedBytes() - allocBefore) / (double) numCall));
+        }
+
+        @Override
+        public void initialise() {
+            super.initialise();
+            if (initVaccCoverage >= 0) {
+                double[] vaccParam = new double[SiteSpecificVaccination.OPTIONAL_EFFECT_REMOVE_SYM_INF_DUR_DEFAULT_SD + 1];
+                Arrays.fill(vaccParam, -1);
+                vaccParam[SiteSpecificVaccination.EFFECT_INDEX_PROPORTION_VACC_COVERAGE_SETTING] = initVaccCoverage;
+                for (int i = SiteSpecificVaccination.EFFECT_INDEX_TRANMISSION_EFFICACY_G;
+                        i <= SiteSpecificVaccination.EFFECT_INDEX_SUSCEPTIBLE_EFFICACY_R; i++) {
+                    vaccParam[i] = 0.5;
+                }
+                vaccParam[SiteSpecificVaccination.OPTIONAL_EFFECT_VACCINE_DURATION_DEFAULT] = 2 * 360;
+                SiteSpecificVaccination vacc = new SiteSpecificVaccination(vaccParam,
+                        new int[]{getGlobalTime(), boosterInterval > 0 ? -boosterInterval : Integer.MAX_VALUE});
+                setParameter("", MSM_SITE_SPECIFIC_VACCINATION, vacc);
+                for (int p = 0; p < getPop().length; p++) {
+                    if (getRNG().nextDouble() < initVaccCoverage) {
+                        vaccinatePerson(vacc, getPop()[p]);
+                    }
+                }
+            }
+        }
+    }
+
+}